@@ -1,5 +1,6 @@
 package Maxwell;
 
+import shapes.Canvas;
 import shapes.Circle;
 
 /**
@@ -7,27 +8,36 @@ import shapes.Circle;
  * una cierta cantidad de partículas.
  */
 public class BlackHole {
-    private Circle shape;
+    static final int SIZE = 40; // diámetro dibujado por omisión
+
+    private Circle shape; // null hasta la primera vez que se muestra
     private int x, y;
     private int capacity;
+    private int consumed;
+    private int radius;
+    long handle; // handle en el contenedor, 0 si no está en uno
 
     /**
-     * Crea un agujero negro en (x,y) con la capacidad dada.
-     * Si visible es true, se muestra.
+     * Crea un agujero negro en (x,y) con la capacidad dada y el tamaño
+     * por omisión. Si visible es true, se muestra.
      */
     public BlackHole(int x, int y, int capacity, boolean visible) {
+        this(x, y, capacity, SIZE / 2, visible);
+    }
+
+    /**
+     * Crea un agujero negro dibujado como un círculo de radio 'radius'
+     * con la esquina superior izquierda en (x, y). Captura lo que entra
+     * en ese círculo. Si visible es true, se muestra.
+     */
+    public BlackHole(int x, int y, int capacity, int radius, boolean visible) {
         this.x = x;
         this.y = y;
         this.capacity = capacity;
-
-        shape = new Circle();
-        shape.changeColor("black");
-        shape.moveHorizontal(x);
-        shape.moveVertical(y);
-        shape.changeSize(40);
+        this.radius = radius;
 
         if (visible) {
-            shape.makeVisible();
+            makeVisible();
         }
     }
 
@@ -38,15 +48,52 @@ public class BlackHole {
     public boolean consumeParticle() {
         if (capacity > 0) {
             capacity--;
+            consumed++;
             return true;
         }
         return false;
     }
 
+    /**
+     * @return true si ya no puede consumir más partículas
+     */
+    public boolean isFull() {
+        return capacity <= 0;
+    }
+
+    /**
+     * @return partículas que todavía puede consumir
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return partículas consumidas hasta ahora
+     */
+    public int getFill() {
+        return consumed;
+    }
+
+    /**
+     * @return radio de captura, el del círculo dibujado
+     */
+    public int getRadius() {
+        return radius;
+    }
+
     /**
      * Hace visible el agujero negro.
      */
     public void makeVisible() {
+        if (shape == null) {
+            shape = new Circle();
+            shape.changeColor("black");
+            shape.changeLayer(Canvas.STATIC_LAYER); // casi nunca cambia
+            shape.moveHorizontal(x);
+            shape.moveVertical(y);
+            shape.changeSize(2 * radius);
+        }
         shape.makeVisible();
     }
 
@@ -54,7 +101,9 @@ public class BlackHole {
      * Hace invisible el agujero negro.
      */
     public void makeInvisible() {
-        shape.makeInvisible();
+        if (shape != null) {
+            shape.makeInvisible();
+        }
     }
 
     /**
@@ -70,4 +119,18 @@ public class BlackHole {
     public int getY() {
         return y;
     }
+
+    /**
+     * @return coordenada X del centro del círculo dibujado
+     */
+    public int getCenterX() {
+        return x + radius;
+    }
+
+    /**
+     * @return coordenada Y del centro del círculo dibujado
+     */
+    public int getCenterY() {
+        return y + radius;
+    }
 }
@@ -1,5 +1,6 @@
 package Maxwell;
 
+import shapes.Canvas;
 import shapes.Square;
 
 /**
@@ -7,7 +8,8 @@ import shapes.Square;
  * Se basa en la clase Square del paquete shapes.
  */
 public class Box {
-    private Square shape;
+    private Square shape; // null hasta la primera vez que se muestra
+    private int x, y, size;
     private boolean visible;
 
     /**
@@ -15,11 +17,9 @@ public class Box {
      * con el tamaño especificado. 
      */
     public Box(int x, int y, int size, boolean visible) {
-        shape = new Square();
-        shape.moveHorizontal(x);
-        shape.moveVertical(y);
-        shape.changeSize(size);
-        shape.changeColor("black");  // Cambia si deseas otro color
+        this.x = x;
+        this.y = y;
+        this.size = size;
         this.visible = false;
 
         if (visible) {
@@ -27,9 +27,28 @@ public class Box {
         }
     }
 
+    /**
+     * Cambia el tamaño del box sin volver a crearlo.
+     * @param size nuevo tamaño
+     */
+    public void changeSize(int size) {
+        this.size = size;
+        if (shape != null) {
+            shape.changeSize(size);
+        }
+    }
+
     public void makeVisible() {
         if (!visible) {
             visible = true;
+            if (shape == null) {
+                shape = new Square();
+                shape.moveHorizontal(x);
+                shape.moveVertical(y);
+                shape.changeSize(size);
+                shape.changeColor("black");  // Cambia si deseas otro color
+                shape.changeLayer(Canvas.STATIC_LAYER); // casi nunca cambia
+            }
             shape.makeVisible();
         }
     }
@@ -2,19 +2,68 @@ package shapes;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.*;
 
 /**
  * Canvas is a class to allow for simple graphical drawing.
  * It acts as a singleton: only one Canvas instance can exist
  * at a time. Each shape is drawn onto this single Canvas.
+ *
+ * Shapes may be added and removed from any thread: the changes are
+ * queued and applied on the Swing event thread, which is the only
+ * thread that touches the list of shapes. Shapes that move keep the
+ * same geometry object on the canvas and store their new frame in a
+ * reused {@link ShapeMove}; the event thread applies the pending moves
+ * once per flush, so geometry already on the canvas is never changed by
+ * another thread and moving a shape allocates nothing.
+ *
+ * Without a display the canvas keeps and updates its shapes but opens
+ * no window, so drawing code can also run in headless tests.
+ *
+ * Shapes live in one of two layers. The static layer (background, demons,
+ * holes) is rendered once into a cached image that is only redrawn when a
+ * static shape changes; the dynamic layer is painted on top every frame.
  */
 public class Canvas extends JPanel {
+    /** Layer for shapes that rarely change, cached as an image. */
+    public static final int STATIC_LAYER = 0;
+    /** Layer for moving shapes, painted every frame. Default layer. */
+    public static final int DYNAMIC_LAYER = 1;
+
     private static Canvas canvasSingleton;
+    // shape changes queued by each thread since the class was loaded
+    private static final ThreadLocal<long[]> submittedChanges =
+        ThreadLocal.withInitial(() -> new long[1]);
+
+    private final Layer[] layers;            // shapes to be drawn, per layer
+    private Rectangle dirty;                 // area changed since last paint
+    private BufferedImage staticImage;       // cached rendering of the static layer
+    private final AtomicBoolean staticChanged;
+
+    // add/remove requests waiting to be applied on the event thread
+    private final ConcurrentLinkedQueue<Command> pending;
+    private final AtomicBoolean flushScheduled;
+    // moves waiting to be applied, linked through ShapeMove.next
+    private final AtomicReference<ShapeMove> pendingMoves;
 
-    private final ArrayList<Object> objects; // shapes to be drawn
-    private final ArrayList<Color> colors;   // color for each shape
+    // area reported by repaintArea, packed as four 16-bit corners
+    private static final long NO_AREA = packArea(0xFFFF, 0xFFFF, 0, 0);
+    private final AtomicLong pendingArea;
+    private int changesSinceFrame; // applied since the last paint
+
+    // changes collected between beginBatch and endBatch, per thread
+    private final ThreadLocal<Batch> batches;
     private JFrame frame;
 
     /**
@@ -24,15 +73,22 @@ public class Canvas extends JPanel {
      * @param height the height of the window
      */
     private Canvas(String title, int width, int height) {
-        frame = new JFrame();
-        frame.setContentPane(this);
-        frame.setTitle(title);
-        frame.setSize(width, height);
-        frame.setLocationRelativeTo(null); // center on screen
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        if (!GraphicsEnvironment.isHeadless()) {
+            frame = new JFrame();
+            frame.setContentPane(this);
+            frame.setTitle(title);
+            frame.setSize(width, height);
+            frame.setLocationRelativeTo(null); // center on screen
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        }
 
-        objects = new ArrayList<>();
-        colors = new ArrayList<>();
+        layers = new Layer[] { new Layer(), new Layer() };
+        staticChanged = new AtomicBoolean(true);
+        pending = new ConcurrentLinkedQueue<>();
+        flushScheduled = new AtomicBoolean(false);
+        pendingMoves = new AtomicReference<>();
+        pendingArea = new AtomicLong(NO_AREA);
+        batches = new ThreadLocal<>();
     }
 
     /**
@@ -44,10 +100,23 @@ public class Canvas extends JPanel {
         if (canvasSingleton == null) {
             canvasSingleton = new Canvas("Canvas", 600, 500);
         }
-        canvasSingleton.setVisible(true);
+        if (canvasSingleton.frame != null && !canvasSingleton.frame.isVisible()) {
+            canvasSingleton.setVisible(true);
+        }
         return canvasSingleton;
     }
 
+    /**
+     * Returns how many shape changes the calling thread has queued so
+     * far, so a simulation can count its own changes while other threads
+     * draw too. Each add, remove and move counts once, also when it is
+     * part of a batch or a bulk change. Does not create the canvas.
+     * @return changes queued by this thread since the class was loaded
+     */
+    public static long submittedChanges() {
+        return submittedChanges.get()[0];
+    }
+
     /**
      * Sets the canvas visibility and brings it to the front of the screen.
      * @param visible true to show the canvas, false to hide it
@@ -59,46 +128,371 @@ public class Canvas extends JPanel {
     }
 
     /**
-     * Adds the given shape to the canvas with the given color.
+     * Adds the given shape to the dynamic layer with the given color.
      * @param shape an AWT Shape (e.g. Ellipse2D, Rectangle2D, Polygon)
      * @param color the Color in which to draw the shape
      */
     public void add(Object shape, Color color) {
-        objects.add(shape);
-        colors.add(color);
-        repaint();
+        add(shape, color, DYNAMIC_LAYER);
     }
 
     /**
-     * Removes the given shape from the canvas.
+     * Adds the given shape to the given layer with the given color.
+     * @param shape an AWT Shape (e.g. Ellipse2D, Rectangle2D, Polygon)
+     * @param color the Color in which to draw the shape
+     * @param layer STATIC_LAYER or DYNAMIC_LAYER
+     */
+    public void add(Object shape, Color color, int layer) {
+        Batch batch = batches.get();
+        if (batch != null) {
+            batch.add(shape, color, layer);
+        } else {
+            submit(new Command(shape, color, layer));
+        }
+    }
+
+    /**
+     * Removes the given shape from the dynamic layer.
      * @param shape the shape to remove
      */
     public void remove(Object shape) {
-        int index = objects.indexOf(shape);
-        if (index != -1) {
-            objects.remove(index);
-            colors.remove(index);
-            repaint();
+        remove(shape, DYNAMIC_LAYER);
+    }
+
+    /**
+     * Removes the given shape from the given layer.
+     * @param shape the shape to remove
+     * @param layer STATIC_LAYER or DYNAMIC_LAYER
+     */
+    public void remove(Object shape, int layer) {
+        Batch batch = batches.get();
+        if (batch != null) {
+            batch.remove(shape, layer);
+        } else {
+            submit(new Command(shape, null, layer));
+        }
+    }
+
+    /**
+     * Moves or resizes a shape already added to the canvas. The frame is
+     * stored in the shape's move and applied on the event thread, which
+     * also repaints the area the shape covered before and after. Only the
+     * last frame stored before the next flush is applied. Never allocates.
+     * @param move the move created when the shape was added
+     * @param x new left edge
+     * @param y new top edge
+     * @param width new width
+     * @param height new height
+     */
+    void move(ShapeMove move, int x, int y, int width, int height) {
+        submittedChanges.get()[0]++;
+        if (move.set(x, y, width, height)) {
+            ShapeMove head;
+            do {
+                head = pendingMoves.get();
+                move.next = head;
+            } while (!pendingMoves.compareAndSet(head, move));
+            scheduleFlush();
         }
     }
 
+    /**
+     * Adds many shapes to the dynamic layer in a single change, with a
+     * single repaint.
+     * @param shapes the shapes to add
+     * @param shapeColors the color of each shape, in the same order
+     */
+    public void addAll(List<?> shapes, List<Color> shapeColors) {
+        if (shapes.size() != shapeColors.size()) {
+            throw new IllegalArgumentException("One color is needed per shape");
+        }
+        if (!shapes.isEmpty()) {
+            submit(new Command(new ArrayList<Object>(shapes), new ArrayList<Color>(shapeColors),
+                               DYNAMIC_LAYER));
+        }
+    }
+
+    /**
+     * Removes many shapes from the dynamic layer in a single pass, with
+     * a single repaint.
+     * @param shapes the shapes to remove
+     */
+    public void removeAll(Collection<?> shapes) {
+        if (!shapes.isEmpty()) {
+            submit(new Command(new ArrayList<Object>(shapes), (List<Color>) null, DYNAMIC_LAYER));
+        }
+    }
+
+    /**
+     * Marks the static layer as changed, e.g. after a static shape
+     * changed its geometry in place, and repaints the given area.
+     * @param x left edge of the area
+     * @param y top edge of the area
+     * @param width width of the area
+     * @param height height of the area
+     */
+    public void repaintStaticArea(int x, int y, int width, int height) {
+        staticChanged.set(true);
+        repaintArea(x, y, width, height);
+    }
+
+    /**
+     * Starts collecting the adds and removes made by the current thread,
+     * e.g. while many shapes are made visible at once. They are sent
+     * to the canvas as bulk changes by {@link #endBatch()}.
+     * Batches may be nested; only the outermost end sends them.
+     */
+    public void beginBatch() {
+        Batch batch = batches.get();
+        if (batch == null) {
+            batches.set(new Batch());
+        } else {
+            batch.depth++;
+        }
+    }
+
+    /**
+     * Sends the changes collected since {@link #beginBatch()}. Runs of
+     * adds and runs of removes each become one bulk change, so the
+     * order of the calls is kept.
+     */
+    public void endBatch() {
+        Batch batch = batches.get();
+        if (batch == null) {
+            return;
+        }
+        if (batch.depth > 0) {
+            batch.depth--;
+            return;
+        }
+        batches.remove();
+        batch.flushRun();
+        for (Command c : batch.commands) {
+            submit(c);
+        }
+    }
+
+    /**
+     * Asks for the given area to be repainted, e.g. after a shape already
+     * on the canvas changed its geometry in place. Does not allocate and
+     * never blocks.
+     * @param x left edge of the area
+     * @param y top edge of the area
+     * @param width width of the area
+     * @param height height of the area
+     */
+    public void repaintArea(int x, int y, int width, int height) {
+        long area = packArea(x, y, x + width, y + height);
+        long current;
+        long merged;
+        do {
+            current = pendingArea.get();
+            merged = unionArea(current, area);
+        } while (merged != current && !pendingArea.compareAndSet(current, merged));
+        scheduleFlush();
+    }
+
     /**
      * Paint method called by the AWT framework.
-     * Draws each shape in objects[] with the corresponding color in colors[].
+     * Draws the cached static layer, then each dynamic shape with its
+     * color, skipping the ones that fall outside the area being repainted.
      */
     @Override
     public void paint(Graphics g) {
+        FrameEvent event = new FrameEvent();
+        event.begin();
+        drainCommands();
         super.paint(g);
         Graphics2D g2 = (Graphics2D) g;
-        for (int i = 0; i < objects.size(); i++) {
-            g2.setColor(colors.get(i));
-            Object shape = objects.get(i);
+        Rectangle clip = g2.getClipBounds();
+        g2.drawImage(staticLayerImage(), 0, 0, null);
+        Layer dynamic = layers[DYNAMIC_LAYER];
+        int painted = 0;
+        for (int i = 0; i < dynamic.objects.size(); i++) {
+            Object shape = dynamic.objects.get(i);
             if (shape instanceof Shape) {
-                g2.fill((Shape) shape);
+                Shape s = (Shape) shape;
+                if (clip == null || s.intersects(clip)) {
+                    g2.setColor(dynamic.colors.get(i));
+                    g2.fill(s);
+                    painted++;
+                }
+            }
+        }
+        // changes picked up above may lie outside the area just painted
+        if (dirty != null && clip != null && !clip.contains(dirty)) {
+            repaint(dirty);
+        }
+        dirty = null;
+        if (event.shouldCommit()) {
+            event.changes = changesSinceFrame;
+            event.shapes = dynamic.objects.size() + layers[STATIC_LAYER].objects.size();
+            event.painted = painted;
+            event.clipArea = clip == null ? -1 : clip.width * clip.height;
+            event.commit();
+        }
+        changesSinceFrame = 0;
+    }
+
+    /**
+     * Returns the static layer rendered into an image, redrawing it
+     * only when a static shape changed or the panel was resized.
+     * Runs on the event thread.
+     */
+    private BufferedImage staticLayerImage() {
+        int w = Math.max(getWidth(), 1);
+        int h = Math.max(getHeight(), 1);
+        if (staticImage == null || staticImage.getWidth() != w || staticImage.getHeight() != h) {
+            staticImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            staticChanged.set(true);
+        }
+        if (staticChanged.getAndSet(false)) {
+            Graphics2D g2 = staticImage.createGraphics();
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, w, h);
+            g2.setComposite(AlphaComposite.SrcOver);
+            Layer layer = layers[STATIC_LAYER];
+            for (int i = 0; i < layer.objects.size(); i++) {
+                Object shape = layer.objects.get(i);
+                if (shape instanceof Shape) {
+                    g2.setColor(layer.colors.get(i));
+                    g2.fill((Shape) shape);
+                }
+            }
+            g2.dispose();
+        }
+        return staticImage;
+    }
+
+    /**
+     * Queues a change and makes sure the event thread will apply it.
+     * Never blocks, so simulation threads do not contend on the canvas.
+     * @param command the change to apply
+     */
+    private void submit(Command command) {
+        submittedChanges.get()[0] += command.shapes != null ? command.shapes.size() : 1;
+        pending.offer(command);
+        scheduleFlush();
+    }
+
+    /**
+     * Makes sure a flush is pending on the event thread.
+     */
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    /**
+     * Applies the queued changes and repaints the area they touched.
+     * Runs on the event thread.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        drainCommands();
+        if (dirty != null) {
+            repaint(dirty);
+        }
+    }
+
+    /**
+     * Applies every queued change to its layer, in the order they were
+     * submitted. Runs on the event thread.
+     */
+    private void drainCommands() {
+        Command c;
+        while ((c = pending.poll()) != null) {
+            changesSinceFrame++;
+            Layer layer = layers[c.layer];
+            if (c.shapes != null) {
+                if (c.colors != null) {
+                    layer.objects.addAll(c.shapes);
+                    layer.colors.addAll(c.colors);
+                    for (Object shape : c.shapes) {
+                        markDirty(shape);
+                    }
+                } else {
+                    layer.removeAll(c.shapes);
+                }
+            } else if (c.color != null) {
+                layer.objects.add(c.shape);
+                layer.colors.add(c.color);
+                markDirty(c.shape);
+            } else {
+                layer.remove(c.shape);
             }
+            if (c.layer == STATIC_LAYER) {
+                staticChanged.set(true);
+            }
+        }
+        ShapeMove move = pendingMoves.getAndSet(null);
+        while (move != null) {
+            // read the link first: once applied the move can be linked again
+            ShapeMove next = move.next;
+            move.next = null;
+            changesSinceFrame++;
+            markDirty(move.shape);
+            move.apply();
+            markDirty(move.shape);
+            if (move.layer == STATIC_LAYER) {
+                staticChanged.set(true);
+            }
+            move = next;
+        }
+        long area = pendingArea.getAndSet(NO_AREA);
+        if (area != NO_AREA) {
+            int x1 = (int) (area >>> 48);
+            int y1 = (int) (area >>> 32) & 0xFFFF;
+            int x2 = (int) (area >>> 16) & 0xFFFF;
+            int y2 = (int) area & 0xFFFF;
+            markDirty(new Rectangle(x1, y1, x2 - x1, y2 - y1));
         }
     }
 
+    /**
+     * Adds the bounds of the given shape to the dirty area, the only
+     * area that will be repainted instead of the whole panel.
+     * @param shape the shape that was added or removed
+     */
+    private void markDirty(Object shape) {
+        if (!(shape instanceof Shape)) {
+            return;
+        }
+        // one extra pixel so antialiased edges are also cleared
+        Rectangle bounds = ((Shape) shape).getBounds();
+        bounds.grow(1, 1);
+        if (dirty == null) {
+            dirty = bounds;
+        } else {
+            dirty.add(bounds);
+        }
+    }
+
+    /**
+     * Packs the corners of an area into a long, clamped to the
+     * 0..65535 range that fits in 16 bits.
+     */
+    private static long packArea(int x1, int y1, int x2, int y2) {
+        return (long) clamp(x1) << 48 | (long) clamp(y1) << 32
+             | (long) clamp(x2) << 16 | clamp(y2);
+    }
+
+    /**
+     * Smallest packed area that contains both packed areas.
+     */
+    private static long unionArea(long a, long b) {
+        return packArea(
+            Math.min((int) (a >>> 48), (int) (b >>> 48)),
+            Math.min((int) (a >>> 32) & 0xFFFF, (int) (b >>> 32) & 0xFFFF),
+            Math.max((int) (a >>> 16) & 0xFFFF, (int) (b >>> 16) & 0xFFFF),
+            Math.max((int) a & 0xFFFF, (int) b & 0xFFFF));
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(0xFFFF, v));
+    }
+
     /**
      * Wait for a specified number of milliseconds (simple utility method).
      * @param milliseconds length of time to pause
@@ -110,6 +504,117 @@ public class Canvas extends JPanel {
             // ignoring exception at the moment
         }
     }
-}
 
+    /**
+     * The shapes of one layer and their colors. Only used on the event thread.
+     */
+    private class Layer {
+        final ArrayList<Object> objects = new ArrayList<>();
+        final ArrayList<Color> colors = new ArrayList<>();
+
+        /**
+         * Removes the shape, compared by identity since shapes are
+         * updated in place.
+         */
+        void remove(Object shape) {
+            for (int i = 0; i < objects.size(); i++) {
+                if (objects.get(i) == shape) {
+                    objects.remove(i);
+                    colors.remove(i);
+                    markDirty(shape);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Removes every shape in the list with one pass over objects.
+         */
+        void removeAll(List<Object> shapes) {
+            Set<Object> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+            gone.addAll(shapes);
+            int kept = 0;
+            for (int i = 0; i < objects.size(); i++) {
+                Object shape = objects.get(i);
+                if (gone.contains(shape)) {
+                    markDirty(shape);
+                } else {
+                    objects.set(kept, shape);
+                    colors.set(kept, colors.get(i));
+                    kept++;
+                }
+            }
+            objects.subList(kept, objects.size()).clear();
+            colors.subList(kept, colors.size()).clear();
+        }
+    }
+
+    /**
+     * A queued add (color set) or remove (color null) of a shape, or of
+     * a list of shapes when shapes is set, on one layer.
+     */
+    private static class Command {
+        final Object shape;
+        final Color color;
+        final List<Object> shapes;
+        final List<Color> colors;
+        final int layer;
+
+        Command(Object shape, Color color, int layer) {
+            this.shape = shape;
+            this.color = color;
+            this.shapes = null;
+            this.colors = null;
+            this.layer = layer;
+        }
 
+        Command(List<Object> shapes, List<Color> colors, int layer) {
+            this.shape = null;
+            this.color = null;
+            this.shapes = shapes;
+            this.colors = colors;
+            this.layer = layer;
+        }
+    }
+
+    /**
+     * Changes collected by one thread between beginBatch and endBatch.
+     * Consecutive adds (or removes) on the same layer are grouped into
+     * one bulk command.
+     */
+    private static class Batch {
+        final ArrayList<Command> commands = new ArrayList<>();
+        ArrayList<Object> run = new ArrayList<>();
+        ArrayList<Color> runColors = new ArrayList<>();
+        boolean runAdds = true;
+        int runLayer = DYNAMIC_LAYER;
+        int depth;
+
+        void add(Object shape, Color color, int layer) {
+            if (!runAdds || runLayer != layer) {
+                flushRun();
+                runAdds = true;
+                runLayer = layer;
+            }
+            run.add(shape);
+            runColors.add(color);
+        }
+
+        void remove(Object shape, int layer) {
+            if (runAdds || runLayer != layer) {
+                flushRun();
+                runAdds = false;
+                runLayer = layer;
+            }
+            run.add(shape);
+        }
+
+        void flushRun() {
+            if (!run.isEmpty()) {
+                commands.add(new Command(run, runAdds ? runColors : null, runLayer));
+                run = new ArrayList<>();
+                runColors = new ArrayList<>();
+            }
+        }
+    }
+}
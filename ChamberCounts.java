@@ -0,0 +1,110 @@
+package Maxwell;
+
+import java.util.Arrays;
+
+/**
+ * Cuántas partículas de cada color hay en cada cámara (0 izquierda,
+ * 1 derecha). El contenedor la mantiene al día en cada alta, baja y
+ * cruce de cámara, así que consultarla no recorre las partículas.
+ */
+class ChamberCounts {
+    private int[] left;
+    private int[] right;
+    private int total;
+
+    ChamberCounts() {
+        left = new int[4];
+        right = new int[4];
+    }
+
+    /**
+     * Suma delta partículas del color dado a la cámara dada.
+     */
+    void add(int chamber, int color, int delta) {
+        if (color >= left.length) {
+            int n = Math.max(left.length * 2, color + 1);
+            left = Arrays.copyOf(left, n);
+            right = Arrays.copyOf(right, n);
+        }
+        if (chamber == 0) {
+            left[color] += delta;
+        } else {
+            right[color] += delta;
+        }
+        total += delta;
+    }
+
+    /**
+     * Pasa una partícula de una cámara a la otra.
+     * @param toChamber cámara a la que llega
+     */
+    void cross(int toChamber, int color) {
+        if (toChamber == 0) {
+            left[color]++;
+            right[color]--;
+        } else {
+            right[color]++;
+            left[color]--;
+        }
+    }
+
+    /**
+     * @return partículas del color dado en la cámara dada
+     */
+    int count(int chamber, int color) {
+        if (color >= left.length) {
+            return 0;
+        }
+        return chamber == 0 ? left[color] : right[color];
+    }
+
+    /**
+     * Qué tanto separan las cámaras a los colores: 1 menos la entropía de
+     * mezcla (la de los colores dentro de cada cámara, ponderada por su
+     * población, como en {@link ThermoAccumulator#entropy()}) dividida por
+     * la entropía de los colores de todo el contenedor. Vale 0 cuando las
+     * dos cámaras tienen la misma mezcla, incluso si todo está en una
+     * sola, y 1 cuando ningún color comparte cámara con otro. Con un solo
+     * color, o sin partículas, no hay nada que separar y vale 1.
+     * @return fracción entre 0 y 1
+     */
+    double sortedFraction() {
+        double mixed = 0;   // entropía de los colores dentro de las cámaras
+        double overall = 0; // entropía de los colores sin mirar la cámara
+        int inLeft = leftTotal();
+        for (int c = 0; c < left.length; c++) {
+            mixed += term(left[c], inLeft) + term(right[c], total - inLeft);
+            overall += term(left[c] + right[c], total);
+        }
+        if (overall <= 0) {
+            return 1;
+        }
+        return Math.max(0, Math.min(1, 1 - mixed / overall));
+    }
+
+    /**
+     * Aporte de m partículas de un color, entre n, a la entropía
+     * ponderada por población: -(m / total) log(m / n).
+     */
+    private double term(int m, int n) {
+        if (m <= 0) {
+            return 0;
+        }
+        return -(double) m / total * Math.log((double) m / n);
+    }
+
+    private int leftTotal() {
+        int n = 0;
+        for (int c : left) {
+            n += c;
+        }
+        return n;
+    }
+
+    /** Vacía los conteos. */
+    void clear() {
+        Arrays.fill(left, 0);
+        Arrays.fill(right, 0);
+        total = 0;
+    }
+}
@@ -12,6 +12,9 @@ public class Circle {
     private int diameter;
     private String color;
     private boolean isVisible;
+    private int layer;
+    private Ellipse2D.Double shape; // on the canvas; only the event thread changes it
+    private ShapeMove move; // reused for every move of the shape
 
     /**
      * Create a new circle at default position with default color.
@@ -22,14 +25,17 @@ public class Circle {
         diameter = 30;
         color = "blue";
         isVisible = false;
+        layer = Canvas.DYNAMIC_LAYER;
     }
 
     /**
      * Make this circle visible. If it was already visible, do nothing.
      */
     public void makeVisible() {
-        isVisible = true;
-        draw();
+        if (!isVisible) {
+            isVisible = true;
+            draw();
+        }
     }
 
     /**
@@ -73,9 +79,7 @@ public class Circle {
      * @param distance positive to move right, negative to move left
      */
     public void moveHorizontal(int distance) {
-        erase();
-        xPosition += distance;
-        draw();
+        moveBy(distance, 0);
     }
 
     /**
@@ -83,9 +87,19 @@ public class Circle {
      * @param distance positive to move down, negative to move up
      */
     public void moveVertical(int distance) {
-        erase();
-        yPosition += distance;
-        draw();
+        moveBy(0, distance);
+    }
+
+    /**
+     * Move the circle by 'dx' pixels horizontally and 'dy' pixels vertically
+     * in a single update, without allocating a new shape.
+     * @param dx positive to move right, negative to move left
+     * @param dy positive to move down, negative to move up
+     */
+    public void moveBy(int dx, int dy) {
+        xPosition += dx;
+        yPosition += dy;
+        update();
     }
 
     /**
@@ -116,9 +130,8 @@ public class Circle {
      * @param newDiameter the new diameter
      */
     public void changeSize(int newDiameter) {
-        erase();
         diameter = newDiameter;
-        draw();
+        update();
     }
 
     /**
@@ -127,17 +140,32 @@ public class Circle {
      * @param newColor the new color name
      */
     public void changeColor(String newColor) {
+        erase();
         color = newColor;
         draw();
     }
 
+    /**
+     * Move the circle to another canvas layer. Shapes that rarely change
+     * belong in Canvas.STATIC_LAYER; moving ones in Canvas.DYNAMIC_LAYER.
+     * @param newLayer the new layer
+     */
+    public void changeLayer(int newLayer) {
+        erase();
+        layer = newLayer;
+        draw();
+    }
+
     /**
      * Draw the circle with current specifications on screen.
      */
     private void draw() {
         if(isVisible) {
             Canvas canvas = Canvas.getCanvas();
-            canvas.add(createShape(), convertColor(color));
+            // a new geometry, since the canvas may still paint the old one
+            shape = new Ellipse2D.Double(xPosition, yPosition, diameter, diameter);
+            move = new ShapeMove(shape, layer);
+            canvas.add(shape, convertColor(color), layer);
         }
     }
 
@@ -147,15 +175,19 @@ public class Circle {
     private void erase() {
         if(isVisible) {
             Canvas canvas = Canvas.getCanvas();
-            canvas.remove(createShape());
+            canvas.remove(shape, layer);
         }
     }
 
     /**
-     * Create the circle shape for drawing.
+     * Store the current position and size in the shape's pending move;
+     * the canvas applies it on the event thread and repaints the area
+     * covered by the old and the new position.
      */
-    private Shape createShape() {
-        return new Ellipse2D.Double(xPosition, yPosition, diameter, diameter);
+    private void update() {
+        if(isVisible) {
+            Canvas.getCanvas().move(move, xPosition, yPosition, diameter, diameter);
+        }
     }
 
     /**
@@ -1,5 +1,6 @@
 package Maxwell;
 
+import shapes.Canvas;
 import shapes.Triangle;
 
 /**
@@ -7,8 +8,9 @@ import shapes.Triangle;
  * del paquete shapes para su representación.
  */
 public class Demon {
-    private Triangle shape;
+    private Triangle shape; // null hasta la primera vez que se muestra
     private int x, y;
+    long handle; // handle en el contenedor, 0 si no está en uno
 
     /**
      * Crea un demonio en (x,y). Si visible es true, 
@@ -17,21 +19,38 @@ public class Demon {
     public Demon(int x, int y, boolean visible) {
         this.x = x;
         this.y = y;
-        shape = new Triangle();
-        shape.changeSize(40, 40);
-        shape.changeColor("black");
-        shape.moveHorizontal(x);
-        shape.moveVertical(y);
 
         if (visible) {
-            shape.makeVisible();
+            makeVisible();
         }
     }
 
+    /**
+     * @return coordenada X
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return coordenada Y
+     */
+    public int getY() {
+        return y;
+    }
+
     /**
      * Hace visible el demonio.
      */
     public void makeVisible() {
+        if (shape == null) {
+            shape = new Triangle();
+            shape.changeSize(40, 40);
+            shape.changeColor("black");
+            shape.changeLayer(Canvas.STATIC_LAYER); // casi nunca cambia
+            shape.moveHorizontal(x);
+            shape.moveVertical(y);
+        }
         shape.makeVisible();
     }
 
@@ -39,6 +58,8 @@ public class Demon {
      * Hace invisible el demonio.
      */
     public void makeInvisible() {
-        shape.makeInvisible();
+        if (shape != null) {
+            shape.makeInvisible();
+        }
     }
 }
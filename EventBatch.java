@@ -0,0 +1,82 @@
+package Maxwell;
+
+/**
+ * Lote de eventos de la simulación, leído directamente del buffer
+ * circular sin copiarlo. Cada evento tiene un tipo, el paso en que
+ * ocurrió, una posición (x, y) y dos datos extra (a, b) cuyo sentido
+ * depende del tipo:
+ * <ul>
+ * <li>{@link #CONSUMED}: (x, y) partícula; (a, b) agujero que la consumió</li>
+ * <li>{@link #HOLE_FULL}: (x, y) partícula que lo llenó; (a, b) agujero</li>
+ * <li>{@link #WALL_BOUNCE}: (x, y) partícula; a paredes tocadas (1 vertical, 2 horizontal)</li>
+ * <li>{@link #GATE_CROSSING}: (x, y) partícula; a dirección (+1 a la derecha, -1 a la izquierda)</li>
+ * </ul>
+ */
+public final class EventBatch {
+    /** Un agujero negro consumió una partícula. */
+    public static final int CONSUMED = 1;
+    /** Un agujero negro se quedó sin capacidad. */
+    public static final int HOLE_FULL = 2;
+    /** Una partícula rebotó en una pared. */
+    public static final int WALL_BOUNCE = 3;
+    /** Una partícula cruzó la compuerta de los demonios. */
+    public static final int GATE_CROSSING = 4;
+
+    private final EventRing ring;
+    private long from;
+    private int size;
+
+    EventBatch(EventRing ring) {
+        this.ring = ring;
+    }
+
+    /**
+     * Apunta el lote a los eventos [from, from + size) del buffer.
+     */
+    void reset(long from, int size) {
+        this.from = from;
+        this.size = size;
+    }
+
+    /** @return número de eventos del lote */
+    public int size() {
+        return size;
+    }
+
+    /** @return tipo del evento i */
+    public int type(int i) {
+        return ring.types[slot(i)];
+    }
+
+    /** @return paso en que ocurrió el evento i */
+    public long step(int i) {
+        return ring.steps[slot(i)];
+    }
+
+    /** @return coordenada X del evento i */
+    public int x(int i) {
+        return ring.xs[slot(i)];
+    }
+
+    /** @return coordenada Y del evento i */
+    public int y(int i) {
+        return ring.ys[slot(i)];
+    }
+
+    /** @return primer dato extra del evento i */
+    public int a(int i) {
+        return ring.as[slot(i)];
+    }
+
+    /** @return segundo dato extra del evento i */
+    public int b(int i) {
+        return ring.bs[slot(i)];
+    }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Evento " + i + " de " + size);
+        }
+        return ring.slot(from + i);
+    }
+}
@@ -0,0 +1,139 @@
+package Maxwell;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hilo que vacía el {@link EventRing} y entrega los eventos en lotes a
+ * los {@link SimulationListener}, fuera del hilo de la simulación.
+ * Vive hasta {@link #close()}. Si un listener falla, los demás siguen
+ * recibiendo el lote y el error queda guardado hasta que el contenedor
+ * lo pide con {@link #takeFailure()}.
+ */
+class EventDispatcher implements Runnable {
+    private static final int RING_SIZE = 1 << 16;
+    private static final int MAX_BATCH = 4096;
+    private static final long IDLE_NANOS = 1_000_000L;
+    private static final int SPINS = 1000;
+
+    private final EventRing ring;
+    private final EventBatch batch;
+    private final CopyOnWriteArrayList<SimulationListener> listeners;
+    private final Thread thread;
+    private final AtomicReference<RuntimeException> failure;
+    private volatile boolean closed;
+
+    EventDispatcher() {
+        ring = new EventRing(RING_SIZE);
+        batch = new EventBatch(ring);
+        listeners = new CopyOnWriteArrayList<>();
+        failure = new AtomicReference<>();
+        thread = new Thread(this, "maxwell-events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** @return buffer en el que escribe la simulación */
+    EventRing ring() {
+        return ring;
+    }
+
+    void addListener(SimulationListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(SimulationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** @return true si hay alguien escuchando */
+    boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Publica lo escrito por la simulación y despierta al hilo de eventos.
+     * Lo llama el hilo de la simulación.
+     */
+    void publish() {
+        if (ring.publish()) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Espera hasta que todo lo publicado haya sido entregado, a lo sumo
+     * timeoutNanos. Deja de esperar si el hilo de eventos murió.
+     * @return true si se entregó todo
+     */
+    boolean awaitDelivery(long timeoutNanos) {
+        long target = ring.published();
+        long deadline = System.nanoTime() + timeoutNanos;
+        int spins = 0;
+        while (ring.consumed() < target) {
+            if (!thread.isAlive() || System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.unpark(thread);
+            if (spins++ < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(50_000L);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return el primer error de un listener desde la llamada anterior,
+     *         o null si no hubo
+     */
+    RuntimeException takeFailure() {
+        return failure.getAndSet(null);
+    }
+
+    /**
+     * Entrega lo que ya estaba publicado y termina el hilo de eventos,
+     * esperando a que salga. Si lo llama un listener, desde el mismo
+     * hilo de eventos, no espera.
+     */
+    void close() {
+        closed = true;
+        thread.interrupt();
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long from = ring.consumed();
+            long to = ring.published();
+            if (from == to) {
+                if (closed) {
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_NANOS);
+                continue;
+            }
+            int size = (int) Math.min(to - from, MAX_BATCH);
+            batch.reset(from, size);
+            for (SimulationListener listener : listeners) {
+                try {
+                    listener.onEvents(batch);
+                } catch (RuntimeException e) {
+                    // un listener con errores no debe detener a los demás
+                    failure.compareAndSet(null, e);
+                }
+            }
+            ring.release(from + size);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package Maxwell;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffer circular preasignado de eventos, con un solo productor (el
+ * hilo de la simulación) y un solo consumidor (el hilo de eventos).
+ * Los eventos se guardan en arreglos paralelos, sin crear objetos.
+ * Si el consumidor se atrasa y el buffer se llena, los eventos nuevos
+ * se descartan y se cuentan: la simulación nunca espera.
+ */
+class EventRing {
+    final int[] types;
+    final long[] steps;
+    final int[] xs;
+    final int[] ys;
+    final int[] as;
+    final int[] bs;
+    private final int capacity;
+    private final int mask;
+
+    private final AtomicLong published; // eventos visibles para el consumidor
+    private final AtomicLong consumed;  // eventos ya entregados
+    private long written;               // solo productor
+    private long knownConsumed;         // solo productor
+    private volatile long dropped;
+
+    /**
+     * @param capacity número de eventos; se redondea a potencia de dos
+     */
+    EventRing(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = this.capacity - 1;
+        types = new int[this.capacity];
+        steps = new long[this.capacity];
+        xs = new int[this.capacity];
+        ys = new int[this.capacity];
+        as = new int[this.capacity];
+        bs = new int[this.capacity];
+        published = new AtomicLong();
+        consumed = new AtomicLong();
+    }
+
+    /**
+     * Escribe un evento. No queda visible hasta {@link #publish()}.
+     * Solo lo llama el productor.
+     * @return false si el buffer estaba lleno y el evento se descartó
+     */
+    boolean offer(int type, long step, int x, int y, int a, int b) {
+        long i = written;
+        if (i - knownConsumed >= capacity) {
+            knownConsumed = consumed.get();
+            if (i - knownConsumed >= capacity) {
+                dropped++;
+                return false;
+            }
+        }
+        int k = (int) i & mask;
+        types[k] = type;
+        steps[k] = step;
+        xs[k] = x;
+        ys[k] = y;
+        as[k] = a;
+        bs[k] = b;
+        written = i + 1;
+        return true;
+    }
+
+    /**
+     * Hace visibles para el consumidor los eventos escritos.
+     * Solo lo llama el productor.
+     * @return true si había eventos nuevos
+     */
+    boolean publish() {
+        if (written == published.get()) {
+            return false;
+        }
+        published.lazySet(written);
+        return true;
+    }
+
+    /** @return índice del primer evento sin entregar */
+    long consumed() {
+        return consumed.get();
+    }
+
+    /** @return índice siguiente al último evento publicado */
+    long published() {
+        return published.get();
+    }
+
+    /**
+     * Marca como entregados los eventos anteriores a index.
+     * Solo lo llama el consumidor.
+     */
+    void release(long index) {
+        consumed.lazySet(index);
+    }
+
+    /** @return eventos descartados por tener el buffer lleno */
+    long dropped() {
+        return dropped;
+    }
+
+    int slot(long index) {
+        return (int) index & mask;
+    }
+}
@@ -0,0 +1,76 @@
+package Maxwell;
+
+/**
+ * Foto de la simulación al terminar un paso: posición, color y handle
+ * de cada partícula, más algunas estadísticas. Es inmutable, así que se
+ * comparte entre todos los suscriptores de {@link FramePublisher}.
+ */
+public final class Frame {
+    private final long step;
+    private final long[] handles;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] colors;
+    private final String[] palette;
+    private final int width;
+    private final int height;
+    private final double sortedFraction;
+
+    Frame(long step, long[] handles, int[] xs, int[] ys, int[] colors, String[] palette,
+          int width, int height, double sortedFraction) {
+        this.step = step;
+        this.handles = handles;
+        this.xs = xs;
+        this.ys = ys;
+        this.colors = colors;
+        this.palette = palette;
+        this.width = width;
+        this.height = height;
+        this.sortedFraction = sortedFraction;
+    }
+
+    /** @return número del paso */
+    public long step() {
+        return step;
+    }
+
+    /** @return número de partículas */
+    public int size() {
+        return xs.length;
+    }
+
+    /** @return handle de la partícula i, el mismo que devolvió addParticle */
+    public long handle(int i) {
+        return handles[i];
+    }
+
+    /** @return coordenada X de la partícula i */
+    public int x(int i) {
+        return xs[i];
+    }
+
+    /** @return coordenada Y de la partícula i */
+    public int y(int i) {
+        return ys[i];
+    }
+
+    /** @return color de la partícula i */
+    public String color(int i) {
+        return palette[colors[i]];
+    }
+
+    /** @return ancho del contenedor */
+    public int width() {
+        return width;
+    }
+
+    /** @return alto del contenedor */
+    public int height() {
+        return height;
+    }
+
+    /** @return separación de colores entre cámaras, ver getSortedFraction */
+    public double sortedFraction() {
+        return sortedFraction;
+    }
+}
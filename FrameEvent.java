@@ -0,0 +1,28 @@
+package shapes;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one call to {@link Canvas#paint}.
+ */
+@Name("shapes.Frame")
+@Label("Canvas Frame")
+@Category("Maxwell")
+@Description("One repaint of the canvas")
+class FrameEvent extends Event {
+    @Label("Applied Changes")
+    int changes;
+
+    @Label("Shapes")
+    int shapes;
+
+    @Label("Painted Shapes")
+    int painted;
+
+    @Label("Clip Area")
+    int clipArea;
+}
@@ -0,0 +1,249 @@
+package Maxwell;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publica un {@link Frame} por cada paso de la simulación a cualquier
+ * número de suscriptores. Cada suscriptor tiene su propio buffer y su
+ * propia política de contrapresión, y recibe los frames desde un hilo
+ * de entrega, nunca desde el hilo de la simulación; así un suscriptor
+ * lento no frena a la simulación ni a los demás, salvo que pida
+ * {@link Backpressure#BLOCK}.
+ */
+public final class FramePublisher implements Flow.Publisher<Frame> {
+    /** Frames que guarda cada suscriptor DROP o BLOCK. */
+    static final int BUFFER = 16;
+
+    /**
+     * Qué hacer cuando un suscriptor no alcanza a leer los frames.
+     */
+    public enum Backpressure {
+        /** Descarta los frames nuevos mientras su buffer esté lleno. */
+        DROP,
+        /** Guarda solo el último frame; recibe siempre el más reciente. */
+        SAMPLE,
+        /** La simulación espera a que haya lugar en el buffer. No se pierde nada. */
+        BLOCK
+    }
+
+    private static final Executor DELIVERY = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "maxwell-frames");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final CopyOnWriteArrayList<FrameSubscription> subscriptions;
+
+    FramePublisher() {
+        subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Suscribe con la política {@link Backpressure#DROP}.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Frame> subscriber) {
+        subscribe(subscriber, Backpressure.DROP);
+    }
+
+    /**
+     * Suscribe con la política de contrapresión dada.
+     * @param subscriber quien recibe los frames
+     * @param policy qué hacer cuando el suscriptor se atrasa
+     */
+    public void subscribe(Flow.Subscriber<? super Frame> subscriber, Backpressure policy) {
+        if (subscriber == null || policy == null) {
+            throw new NullPointerException();
+        }
+        FrameSubscription s = new FrameSubscription(subscriber, policy);
+        subscriptions.add(s);
+        subscriber.onSubscribe(s);
+        s.started();
+    }
+
+    /** @return true si hay al menos un suscriptor */
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /** @return número de suscriptores */
+    public int getNumberOfSubscribers() {
+        return subscriptions.size();
+    }
+
+    /** @return frames descartados entre todos los suscriptores actuales */
+    public long droppedFrames() {
+        long total = 0;
+        for (FrameSubscription s : subscriptions) {
+            total += s.dropped.get();
+        }
+        return total;
+    }
+
+    /**
+     * Entrega el frame a cada suscriptor según su política.
+     * Lo llama el hilo de la simulación.
+     */
+    void publish(Frame frame) {
+        for (FrameSubscription s : subscriptions) {
+            s.offer(frame);
+        }
+    }
+
+    /**
+     * Termina la publicación: cada suscriptor recibe lo que tiene en su
+     * buffer y después onComplete.
+     */
+    void close() {
+        for (FrameSubscription s : subscriptions) {
+            s.complete();
+        }
+    }
+
+    /**
+     * Estado de un suscriptor. Las señales se entregan de a una por vez
+     * en el hilo de entrega: 'wip' cuenta los avisos pendientes y solo
+     * quien lo pasa de 0 a 1 programa la tarea.
+     */
+    private final class FrameSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super Frame> subscriber;
+        private final Backpressure policy;
+        private final ArrayBlockingQueue<Frame> queue;   // DROP y BLOCK
+        private final AtomicReference<Frame> latest;     // SAMPLE
+        private final AtomicLong demand;
+        private final AtomicInteger wip;
+        private final AtomicLong dropped;
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+        private volatile Throwable badRequest;
+
+        FrameSubscription(Flow.Subscriber<? super Frame> subscriber, Backpressure policy) {
+            this.subscriber = subscriber;
+            this.policy = policy;
+            queue = policy == Backpressure.SAMPLE ? null : new ArrayBlockingQueue<>(BUFFER);
+            latest = new AtomicReference<>();
+            demand = new AtomicLong();
+            wip = new AtomicInteger(1); // ocupado hasta que onSubscribe termine
+            dropped = new AtomicLong();
+        }
+
+        /**
+         * onSubscribe ya volvió: si mientras tanto llegaron avisos, se
+         * programa la entrega.
+         */
+        void started() {
+            if (wip.decrementAndGet() != 0) {
+                DELIVERY.execute(this);
+            }
+        }
+
+        void offer(Frame frame) {
+            if (cancelled) {
+                return;
+            }
+            switch (policy) {
+                case SAMPLE:
+                    if (latest.getAndSet(frame) != null) {
+                        dropped.incrementAndGet();
+                    }
+                    break;
+                case BLOCK:
+                    try {
+                        while (!cancelled && !queue.offer(frame, 10, TimeUnit.MILLISECONDS)) {
+                            signal(); // por si el suscriptor espera con demanda pendiente
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped.incrementAndGet();
+                    }
+                    break;
+                default:
+                    if (!queue.offer(frame)) {
+                        dropped.incrementAndGet();
+                    }
+            }
+            signal();
+        }
+
+        void complete() {
+            completed = true;
+            signal();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("request(" + n + "): debe ser positivo");
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void signal() {
+            if (wip.getAndIncrement() == 0) {
+                DELIVERY.execute(this);
+            }
+        }
+
+        private Frame poll() {
+            return policy == Backpressure.SAMPLE ? latest.getAndSet(null) : queue.poll();
+        }
+
+        private boolean isEmpty() {
+            return policy == Backpressure.SAMPLE ? latest.get() == null : queue.isEmpty();
+        }
+
+        /**
+         * Entrega frames mientras haya demanda, y el cierre o el error
+         * cuando corresponda.
+         */
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!cancelled && badRequest != null) {
+                    cancel();
+                    subscriber.onError(badRequest);
+                }
+                while (!cancelled && demand.get() > 0) {
+                    Frame frame = poll();
+                    if (frame == null) {
+                        break;
+                    }
+                    demand.decrementAndGet();
+                    try {
+                        subscriber.onNext(frame);
+                    } catch (RuntimeException e) {
+                        cancel();
+                        subscriber.onError(e);
+                    }
+                }
+                if (!cancelled && completed && isEmpty()) {
+                    cancel();
+                    subscriber.onComplete();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
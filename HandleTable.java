@@ -0,0 +1,212 @@
+package Maxwell;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Tabla de elementos identificados por handles estables.
+ * Un handle junta un número de casilla (32 bits bajos) con la generación
+ * de esa casilla (32 bits altos); al borrar un elemento la generación
+ * cambia, así que un handle viejo nunca apunta a otro elemento.
+ * Agregar, buscar y borrar son O(1). Los elementos vivos se guardan
+ * además contiguos para recorrerlos por índice; al borrar, el último
+ * ocupa el lugar del borrado, así que ese orden puede cambiar.
+ */
+class HandleTable<T> implements Iterable<T> {
+    private Object[] items;    // elementos vivos, contiguos
+    private int[] itemSlot;    // índice -> casilla
+    private Object[] spareItems; // para permute; vacío, se reutiliza
+    private int[] spareSlots;
+    private int[] slotIndex;   // casilla -> índice
+    private int[] generation;  // casilla -> generación actual
+    private int[] freeSlots;
+    private int freeCount;
+    private int slotCount;
+    private int size;
+
+    HandleTable() {
+        items = new Object[16];
+        itemSlot = new int[16];
+        slotIndex = new int[16];
+        generation = new int[16];
+        freeSlots = new int[16];
+    }
+
+    /**
+     * Agrega un elemento.
+     * @return handle del elemento
+     */
+    long add(T item) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == slotIndex.length) {
+                int n = slotCount * 2;
+                slotIndex = Arrays.copyOf(slotIndex, n);
+                generation = Arrays.copyOf(generation, n);
+                freeSlots = Arrays.copyOf(freeSlots, n);
+            }
+            slot = slotCount++;
+            generation[slot] = 1;
+        }
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+            itemSlot = Arrays.copyOf(itemSlot, size * 2);
+        }
+        items[size] = item;
+        itemSlot[size] = slot;
+        slotIndex[slot] = size;
+        size++;
+        return handle(slot);
+    }
+
+    /**
+     * @return casilla del handle; las casillas van desde 0 sin huecos
+     *         grandes, así que sirven de índice en un arreglo
+     */
+    static int slot(long handle) {
+        return (int) handle;
+    }
+
+    /**
+     * @return índice actual del elemento con ese handle, o -1 si ya no existe
+     */
+    int indexOf(long handle) {
+        int slot = slot(handle);
+        if (slot < 0 || slot >= slotCount || generation[slot] != (int) (handle >>> 32)) {
+            return -1;
+        }
+        return slotIndex[slot];
+    }
+
+    /**
+     * @return el elemento con ese handle, o null si ya no existe
+     */
+    @SuppressWarnings("unchecked")
+    T lookup(long handle) {
+        int i = indexOf(handle);
+        return i < 0 ? null : (T) items[i];
+    }
+
+    /**
+     * Borra el elemento con ese handle.
+     * @return el elemento borrado, o null si ya no existía
+     */
+    T remove(long handle) {
+        int i = indexOf(handle);
+        return i < 0 ? null : removeAt(i);
+    }
+
+    /**
+     * Borra el elemento en la posición i; el último pasa a ocupar i.
+     * @return el elemento borrado
+     */
+    @SuppressWarnings("unchecked")
+    T removeAt(int i) {
+        T item = (T) items[i];
+        int slot = itemSlot[i];
+        int last = --size;
+        items[i] = items[last];
+        itemSlot[i] = itemSlot[last];
+        slotIndex[itemSlot[i]] = i;
+        items[last] = null;
+        release(slot);
+        return item;
+    }
+
+    /**
+     * Reordena los elementos vivos: el que estaba en la posición order[i]
+     * pasa a la posición i. Los handles y los objetos no cambian, solo
+     * sus posiciones; los arreglos de la vez anterior se reutilizan.
+     * @param order permutación de 0..size-1
+     */
+    void permute(int[] order) {
+        if (spareItems == null || spareItems.length != items.length) {
+            spareItems = new Object[items.length];
+            spareSlots = new int[itemSlot.length];
+        }
+        Object[] newItems = spareItems;
+        int[] newSlots = spareSlots;
+        for (int i = 0; i < size; i++) {
+            newItems[i] = items[order[i]];
+            newSlots[i] = itemSlot[order[i]];
+            slotIndex[newSlots[i]] = i;
+        }
+        Arrays.fill(items, 0, size, null);
+        spareItems = items;
+        spareSlots = itemSlot;
+        items = newItems;
+        itemSlot = newSlots;
+    }
+
+    /**
+     * @return el elemento en la posición i
+     */
+    @SuppressWarnings("unchecked")
+    T get(int i) {
+        if (i >= size) {
+            throw new IndexOutOfBoundsException("Índice " + i + " de " + size);
+        }
+        return (T) items[i];
+    }
+
+    /**
+     * @return handle del elemento en la posición i
+     */
+    long handleAt(int i) {
+        if (i >= size) {
+            throw new IndexOutOfBoundsException("Índice " + i + " de " + size);
+        }
+        return handle(itemSlot[i]);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Borra todo; los handles entregados dejan de ser válidos.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            items[i] = null;
+            release(itemSlot[i]);
+        }
+        size = 0;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public T next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    private long handle(int slot) {
+        return (long) generation[slot] << 32 | slot;
+    }
+
+    private void release(int slot) {
+        generation[slot]++;
+        freeSlots[freeCount++] = slot;
+    }
+}
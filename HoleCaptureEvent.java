@@ -0,0 +1,34 @@
+package Maxwell;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento JFR emitido cuando un agujero negro consume una partícula.
+ */
+@Name("maxwell.HoleCapture")
+@Label("Hole Capture")
+@Category("Maxwell")
+@Description("Un agujero negro consumió una partícula")
+class HoleCaptureEvent extends Event {
+    @Label("Hole X")
+    int holeX;
+
+    @Label("Hole Y")
+    int holeY;
+
+    @Label("Particle X")
+    int particleX;
+
+    @Label("Particle Y")
+    int particleY;
+
+    @Label("Hole Full")
+    boolean holeFull;
+
+    @Label("Active Holes")
+    int activeHoles;
+}
@@ -0,0 +1,124 @@
+package Maxwell;
+
+import java.util.Arrays;
+
+/**
+ * Índice de los agujeros negros que todavía tienen capacidad.
+ * Guarda el centro del círculo dibujado y el radio de cada agujero en
+ * arreglos paralelos para recorrerlos rápido, y retira un agujero en
+ * cuanto se llena, de modo que los agujeros gastados no cuestan nada en
+ * cada paso.
+ */
+class HoleIndex {
+    private BlackHole[] holes;
+    private int[] xs;     // centro del círculo dibujado
+    private int[] ys;
+    private long[] radii2; // radio al cuadrado
+    private int size;
+
+    /**
+     * Crea un índice vacío.
+     */
+    HoleIndex() {
+        holes = new BlackHole[4];
+        xs = new int[4];
+        ys = new int[4];
+        radii2 = new long[4];
+        size = 0;
+    }
+
+    /**
+     * Agrega un agujero al índice, salvo que ya esté lleno.
+     * @param h agujero a indexar
+     */
+    void add(BlackHole h) {
+        if (h.isFull()) {
+            return;
+        }
+        if (size == holes.length) {
+            int n = size * 2;
+            holes = Arrays.copyOf(holes, n);
+            xs = Arrays.copyOf(xs, n);
+            ys = Arrays.copyOf(ys, n);
+            radii2 = Arrays.copyOf(radii2, n);
+        }
+        holes[size] = h;
+        xs[size] = h.getCenterX();
+        ys[size] = h.getCenterY();
+        radii2[size] = (long) h.getRadius() * h.getRadius();
+        size++;
+    }
+
+    /**
+     * Busca un agujero con capacidad cuyo radio toque el segmento que
+     * recorrió la partícula, de (x0, y0) a (x1, y1), y si lo hay le hace
+     * consumir la partícula. Así una partícula rápida no salta por encima
+     * de un agujero. Todo el cálculo es entero.
+     * @return el agujero que consumió la partícula, o null
+     */
+    BlackHole capture(int x0, int y0, int x1, int y1) {
+        for (int i = 0; i < size; i++) {
+            if (touches(x0, y0, x1, y1, xs[i], ys[i], radii2[i])) {
+                BlackHole h = holes[i];
+                h.consumeParticle();
+                if (h.isFull()) {
+                    retire(i);
+                }
+                return h;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param r2 radio del agujero al cuadrado
+     * @return true si el segmento (x0, y0)-(x1, y1) pasa a menos del
+     *         radio del centro (hx, hy)
+     */
+    static boolean touches(int x0, int y0, int x1, int y1, int hx, int hy, long r2) {
+        long dx = x1 - x0;
+        long dy = y1 - y0;
+        long len2 = dx * dx + dy * dy;
+        long ax = hx - x0;
+        long ay = hy - y0;
+        // proyección del agujero sobre el segmento, escalada por len2
+        long t = ax * dx + ay * dy;
+        if (t <= 0 || len2 == 0) {
+            return ax * ax + ay * ay < r2;
+        }
+        if (t >= len2) {
+            long bx = hx - x1;
+            long by = hy - y1;
+            return bx * bx + by * by < r2;
+        }
+        // distancia² al segmento = |a|² - t²/len2
+        return (ax * ax + ay * ay) * len2 - t * t < r2 * len2;
+    }
+
+    /**
+     * @return número de agujeros que todavía tienen capacidad
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Vacía el índice.
+     */
+    void clear() {
+        Arrays.fill(holes, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Quita el agujero i moviendo el último a su lugar.
+     */
+    private void retire(int i) {
+        size--;
+        holes[i] = holes[size];
+        xs[i] = xs[size];
+        ys[i] = ys[size];
+        radii2[i] = radii2[size];
+        holes[size] = null;
+    }
+}
@@ -0,0 +1,248 @@
+package Maxwell;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import shapes.Canvas;
+import shapes.Circle;
+
+/**
+ * Dibuja las partículas al ritmo de la pantalla, independiente del
+ * ritmo de la simulación. Recibe los frames con la política SAMPLE y en
+ * cada tick del Timer dibuja cada partícula en un punto intermedio entre
+ * sus posiciones en los dos últimos frames, según el tiempo transcurrido
+ * desde que llegó el último. Si la simulación va lenta el movimiento se
+ * ve suave; si va rápida se dibujan solo algunos de sus pasos.
+ *
+ * Las figuras solo se tocan desde el hilo de eventos de Swing. Las
+ * partículas se buscan por la casilla de su handle en arreglos que se
+ * reutilizan entre ticks, sin mapas ni objetos por partícula.
+ */
+class InterpolatingRenderer implements Flow.Subscriber<Frame>, ActionListener {
+    private static final int FRAME_MILLIS = 16; // unos 60 cuadros por segundo
+
+    /**
+     * Los dos últimos frames y cuándo llegó el más nuevo. Se reemplaza
+     * entero en cada frame, así el Timer siempre ve un par consistente.
+     */
+    private static final class State {
+        final Frame previous;
+        final Frame current;
+        final long arrived;
+        final long interval;
+
+        State(Frame previous, Frame current, long arrived, long interval) {
+            this.previous = previous;
+            this.current = current;
+            this.arrived = arrived;
+            this.interval = interval;
+        }
+    }
+
+    /** Círculo que representa a una partícula en pantalla. */
+    private static final class Sprite {
+        final Circle shape;
+        final long handle;
+        int x, y;
+        long tick;
+
+        Sprite(Circle shape, long handle, int x, int y) {
+            this.shape = shape;
+            this.handle = handle;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private final FramePublisher publisher;
+    private final Timer timer;
+    // solo en el hilo de Swing, indexados por casilla del handle
+    private Sprite[] sprites;
+    private int spriteCount;
+    private int[] previousIndex;  // índice en indexed.previous; se valida con el handle
+    private State indexed;        // estado cuyo previous está en previousIndex
+    private volatile State state;
+    private volatile Flow.Subscription subscription;
+    private long ticks;
+
+    InterpolatingRenderer(FramePublisher publisher) {
+        this.publisher = publisher;
+        timer = new Timer(FRAME_MILLIS, this);
+        sprites = new Sprite[16];
+        previousIndex = new int[16];
+    }
+
+    /**
+     * Se suscribe a los frames y empieza a dibujar.
+     */
+    void start() {
+        publisher.subscribe(this, FramePublisher.Backpressure.SAMPLE);
+        timer.start();
+    }
+
+    /**
+     * Deja de recibir frames y de dibujar, y borra las figuras.
+     */
+    void stop() {
+        Flow.Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+        timer.stop();
+        SwingUtilities.invokeLater(this::clear);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription s) {
+        subscription = s;
+        s.request(1);
+    }
+
+    @Override
+    public void onNext(Frame frame) {
+        long now = System.nanoTime();
+        State old = state;
+        if (old == null) {
+            state = new State(null, frame, now, 0);
+        } else {
+            state = new State(old.current, frame, now, now - old.arrived);
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        timer.stop();
+    }
+
+    @Override
+    public void onComplete() {
+        // se queda dibujando el último frame hasta que se llame stop
+    }
+
+    /**
+     * Tick del Timer: lleva cada figura a su posición interpolada.
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        State s = state;
+        if (s == null) {
+            return;
+        }
+        double alpha = 1;
+        if (s.previous != null && s.interval > 0) {
+            alpha = Math.min(1.0, (double) (System.nanoTime() - s.arrived) / s.interval);
+        }
+        if (s != indexed) {
+            index(s.previous);
+            indexed = s;
+        }
+        long tick = ++ticks;
+        Canvas canvas = Canvas.getCanvas();
+        canvas.beginBatch();
+        try {
+            Frame cur = s.current;
+            for (int i = 0; i < cur.size(); i++) {
+                int x = cur.x(i);
+                int y = cur.y(i);
+                long h = cur.handle(i);
+                int j = s.previous == null ? -1 : previousOf(s.previous, i, h);
+                if (j >= 0) {
+                    x = s.previous.x(j) + (int) Math.round((x - s.previous.x(j)) * alpha);
+                    y = s.previous.y(j) + (int) Math.round((y - s.previous.y(j)) * alpha);
+                }
+                int slot = HandleTable.slot(h);
+                if (slot >= sprites.length) {
+                    sprites = Arrays.copyOf(sprites, Math.max(sprites.length * 2, slot + 1));
+                }
+                Sprite sprite = sprites[slot];
+                if (sprite != null && sprite.handle != h) {
+                    // la casilla ahora es de otra partícula
+                    sprite.shape.makeInvisible();
+                    sprite = null;
+                    spriteCount--;
+                }
+                if (sprite == null) {
+                    Circle c = new Circle();
+                    c.changeColor(cur.color(i));
+                    c.moveBy(x, y);
+                    c.makeVisible();
+                    sprite = new Sprite(c, h, x, y);
+                    sprites[slot] = sprite;
+                    spriteCount++;
+                } else if (x != sprite.x || y != sprite.y) {
+                    sprite.shape.moveBy(x - sprite.x, y - sprite.y);
+                    sprite.x = x;
+                    sprite.y = y;
+                }
+                sprite.tick = tick;
+            }
+            // las que ya no están fueron consumidas o borradas
+            if (spriteCount > cur.size()) {
+                for (int k = 0; k < sprites.length; k++) {
+                    if (sprites[k] != null && sprites[k].tick != tick) {
+                        sprites[k].shape.makeInvisible();
+                        sprites[k] = null;
+                        spriteCount--;
+                    }
+                }
+            }
+        } finally {
+            canvas.endBatch();
+        }
+    }
+
+    /**
+     * Anota en previousIndex la posición de cada partícula del frame.
+     * Las casillas que no están quedan con valores viejos; previousOf
+     * los descarta comparando el handle.
+     */
+    private void index(Frame previous) {
+        if (previous == null) {
+            return;
+        }
+        for (int i = 0; i < previous.size(); i++) {
+            int slot = HandleTable.slot(previous.handle(i));
+            if (slot >= previousIndex.length) {
+                previousIndex = Arrays.copyOf(previousIndex, Math.max(previousIndex.length * 2, slot + 1));
+            }
+            previousIndex[slot] = i;
+        }
+    }
+
+    /** @return índice en previous de la partícula i con handle h, o -1 si no estaba */
+    private int previousOf(Frame previous, int i, long h) {
+        if (i < previous.size() && previous.handle(i) == h) {
+            return i; // el orden casi nunca cambia entre pasos
+        }
+        int slot = HandleTable.slot(h);
+        if (slot < previousIndex.length) {
+            int j = previousIndex[slot];
+            if (j < previous.size() && previous.handle(j) == h) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    private void clear() {
+        Canvas canvas = Canvas.getCanvas();
+        canvas.beginBatch();
+        try {
+            for (Sprite sprite : sprites) {
+                if (sprite != null) {
+                    sprite.shape.makeInvisible();
+                }
+            }
+        } finally {
+            canvas.endBatch();
+        }
+        Arrays.fill(sprites, null);
+        spriteCount = 0;
+        state = null;
+        indexed = null;
+    }
+}
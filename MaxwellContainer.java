@@ -1,13 +1,29 @@
 package Maxwell;
 
 import shapes.*;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Clase principal del simulador "Maxwell's Demon".
  * Maneja un contenedor en el que se ubican demonios, partículas y agujeros negros.
+ * Mientras el contenedor no se haga visible no se crea ninguna figura, así
+ * que una corrida sin pantalla no carga AWT ni Swing.
  */
 public class MaxwellContainer {
+    // pasos agrupados en cada evento JFR de start
+    private static final int STEP_BATCH = 64;
+    // partículas generadas con cada generador de addRandomParticles
+    private static final int RANDOM_CHUNK = 4096;
+
     private int width;
     private int height;
     private boolean visible;
@@ -16,9 +32,37 @@ public class MaxwellContainer {
     // Si no necesitas la caja de fondo, puedes eliminar esta línea
     private Box containerBox;
 
-    private ArrayList<Demon> demons;
-    private ArrayList<Particle> particles;
-    private ArrayList<BlackHole> holes;
+    private HandleTable<Demon> demons;
+    private HandleTable<Particle> particles;
+    private HandleTable<BlackHole> holes;
+    private HoleIndex activeHoles; // agujeros que aún pueden consumir
+    private SpatialGrid grid;      // partículas por celda, para buscar por cercanía
+    private final MaxwellMetrics metrics;
+    private ObjectName metricsName;              // null si no están registradas
+
+    private long stepCount;           // pasos ejecutados desde create
+    private EventDispatcher events;   // null hasta el primer listener
+    private EventRing recording;      // buffer de eventos durante start, o null
+
+    private ArrayList<String> colorNames;        // paleta: índice -> color
+    private HashMap<String, Integer> colorIds;   // paleta: color -> índice
+    private ThermoSeries thermo;                 // null si no se pidió
+    private ThermoAccumulator thermoStep;
+    private ChamberCounts chambers;              // partículas por cámara y color
+    private long lastChangeStep;                 // último cruce de cámara o consumo
+    private StatsWriter stats;                   // null si no se pidió
+    private FramePublisher frames;               // null hasta que se pida
+    private String[] palette;                    // copia de colorNames para los frames
+    private boolean interpolate;                 // dibujo interpolado en modo visible
+    private InterpolatingRenderer renderer;      // activo si visible e interpolate
+    private int stepDelay;                       // pausa entre pasos en modo visible
+    private long seed;                           // semilla de todos los generadores
+    private RandomStreams scenarioStreams;       // un generador por trozo de escenario
+    private RandomStreams workerStreams;         // un generador por hilo o shard
+    private int nextScenarioChunk;
+    private int reorderInterval;                 // pasos entre reordenamientos, 0 nunca
+    private long[] mortonKeys;                   // espacio para ordenar, se reutiliza
+    private int[] mortonOrder;                   // permutación resultante, se reutiliza
 
     /**
      * Construye un contenedor con dimensiones por defecto (400x300).
@@ -28,11 +72,19 @@ public class MaxwellContainer {
         height = 300;
         visible = false;
         ok = true;
+        stepDelay = 10;
+        reseed(System.nanoTime());
 
         // Inicializa arrays
-        demons = new ArrayList<>();
-        particles = new ArrayList<>();
-        holes = new ArrayList<>();
+        demons = new HandleTable<>();
+        particles = new HandleTable<>();
+        holes = new HandleTable<>();
+        activeHoles = new HoleIndex();
+        colorNames = new ArrayList<>();
+        colorIds = new HashMap<>();
+        chambers = new ChamberCounts();
+        grid = new SpatialGrid(width, height);
+        metrics = new MaxwellMetrics(() -> particles.size());
 
         // Crea el "box" (cuadrado de fondo) del tamaño actual
         // (Si no te interesa, comenta o quita estas líneas)
@@ -42,15 +94,26 @@ public class MaxwellContainer {
     /**
      * Crea o reinicia el contenedor con dimensiones w x h.
      * Limpia listas y vuelve a crear la "caja" contenedora.
+     * Con dimensiones no positivas no cambia nada y ok() queda en false.
      * @param w ancho
      * @param h alto
      */
     public void create(int w, int h) {
+        if (w <= 0 || h <= 0) {
+            ok = false;
+            showError("Dimensiones inválidas: " + w + "x" + h);
+            return;
+        }
         width = w;
         height = h;
+        stepCount = 0;
+        lastChangeStep = 0;
+        chambers.clear();
         demons.clear();
         particles.clear();
         holes.clear();
+        activeHoles.clear();
+        grid.reset(width, height);
 
         // Re-creamos un box adaptado a la altura o anchura (elige según prefieras)
         // Para que sea un cuadrado, puedes usar min(w, h).
@@ -59,15 +122,44 @@ public class MaxwellContainer {
         ok = true;
     }
 
+    /**
+     * Cambia las dimensiones del contenedor sin perder lo que tiene.
+     * Las partículas que quedan fuera se reflejan hacia adentro, la caja
+     * cambia de tamaño y solo se recalcula lo que depende de las
+     * dimensiones: los conteos por cámara, porque la división se mueve,
+     * y la rejilla espacial.
+     * @param w nuevo ancho
+     * @param h nuevo alto
+     */
+    public void resize(int w, int h) {
+        if (w <= 10 || h <= 10) {
+            ok = false;
+            showError("Dimensiones inválidas: " + w + "x" + h);
+            return;
+        }
+        width = w;
+        height = h;
+        containerBox.changeSize(Math.min(width, height));
+        chambers.clear();
+        for (Particle p : particles) {
+            p.constrain(width - 10, height - 10);
+            chambers.add(chamberOf(p.getX()), p.colorIndex, 1);
+        }
+        rebuildGrid();
+        ok = true;
+    }
+
     /**
      * Agrega un demonio en (x, y).
      * @param x coord X
      * @param y coord Y
+     * @return handle estable del demonio
      */
-    public void addDemon(int x, int y) {
+    public long addDemon(int x, int y) {
         Demon d = new Demon(x, y, visible);
-        demons.add(d);
+        d.handle = demons.add(d);
         ok = true;
+        return d.handle;
     }
 
     /**
@@ -75,8 +167,21 @@ public class MaxwellContainer {
      * @param d referencia al demonio a eliminar
      */
     public void deleteDemon(Demon d) {
-        if (demons.contains(d)) {
-            demons.remove(d);
+        if (demons.lookup(d.handle) == d) {
+            deleteDemon(d.handle);
+        } else {
+            ok = false;
+            showError("Demon no encontrado.");
+        }
+    }
+
+    /**
+     * Elimina el demonio con ese handle si existe.
+     * @param handle handle devuelto por addDemon
+     */
+    public void deleteDemon(long handle) {
+        Demon d = demons.remove(handle);
+        if (d != null) {
             d.makeInvisible();
             ok = true;
         } else {
@@ -85,16 +190,71 @@ public class MaxwellContainer {
         }
     }
 
+    /**
+     * Busca un demonio por su handle.
+     * @param handle handle devuelto por addDemon
+     * @return el demonio, o null si ya no existe
+     */
+    public Demon getDemon(long handle) {
+        Demon d = demons.lookup(handle);
+        ok = d != null;
+        return d;
+    }
+
     /**
      * Agrega una partícula en (x, y) con un color base.
      * @param x coord X
      * @param y coord Y
      * @param colorBase color (red, blue, green, etc.)
+     * @return handle estable de la partícula
+     */
+    public long addParticle(int x, int y, String colorBase) {
+        return addParticle(x, y, colorBase, Particle.UNIT, Particle.UNIT);
+    }
+
+    /**
+     * Agrega una partícula en (x, y) con un color base y una velocidad.
+     * La velocidad va en punto fijo: {@link Particle#UNIT} es un píxel
+     * por paso, así que UNIT / 2 es medio píxel y 3 * UNIT son tres.
+     * @param x coord X
+     * @param y coord Y
+     * @param colorBase color (red, blue, green, etc.)
+     * @param vx velocidad horizontal en 1/UNIT de píxel por paso
+     * @param vy velocidad vertical en 1/UNIT de píxel por paso
+     * @return handle estable de la partícula
+     */
+    public long addParticle(int x, int y, String colorBase, int vx, int vy) {
+        Particle p = new Particle(x, y, colorBase, vx, vy, visible && !interpolate);
+        p.colorIndex = colorIndex(colorBase);
+        p.handle = particles.add(p);
+        chambers.add(chamberOf(x), p.colorIndex, 1);
+        grid.add(particles.size() - 1, p.getX(), p.getY());
+        ok = true;
+        return p.handle;
+    }
+
+    /**
+     * Agrega las primeras n partículas de los arreglos de una vez. En modo
+     * visible todas llegan al canvas en un solo lote.
+     * @return handles de las partículas, en orden
      */
-    public void addParticle(int x, int y, String colorBase) {
-        Particle p = new Particle(x, y, colorBase, visible);
-        particles.add(p);
+    long[] addParticles(int n, int[] xs, int[] ys, String[] colors, int[] vxs, int[] vys) {
+        long[] handles = new long[n];
+        Canvas canvas = visible && !interpolate ? Canvas.getCanvas() : null;
+        if (canvas != null) {
+            canvas.beginBatch();
+        }
+        try {
+            for (int i = 0; i < n; i++) {
+                handles[i] = addParticle(xs[i], ys[i], colors[i], vxs[i], vys[i]);
+            }
+        } finally {
+            if (canvas != null) {
+                canvas.endBatch();
+            }
+        }
         ok = true;
+        return handles;
     }
 
     /**
@@ -102,8 +262,24 @@ public class MaxwellContainer {
      * @param p referencia a la partícula
      */
     public void deleteParticle(Particle p) {
-        if (particles.contains(p)) {
-            particles.remove(p);
+        if (particles.lookup(p.handle) == p) {
+            deleteParticle(p.handle);
+        } else {
+            ok = false;
+            showError("Partícula no encontrada.");
+        }
+    }
+
+    /**
+     * Elimina la partícula con ese handle si existe.
+     * @param handle handle devuelto por addParticle
+     */
+    public void deleteParticle(long handle) {
+        int i = particles.indexOf(handle);
+        if (i >= 0) {
+            Particle p = particles.get(i);
+            removeParticleAt(i);
+            chambers.add(chamberOf(p.getX()), p.colorIndex, -1);
             p.makeInvisible();
             ok = true;
         } else {
@@ -113,43 +289,592 @@ public class MaxwellContainer {
     }
 
     /**
-     * Agrega un agujero negro con cierta capacidad.
+     * Busca una partícula por su handle.
+     * @param handle handle devuelto por addParticle
+     * @return la partícula, o null si ya no existe (fue borrada o consumida)
+     */
+    public Particle getParticle(long handle) {
+        Particle p = particles.lookup(handle);
+        ok = p != null;
+        return p;
+    }
+
+    /**
+     * Agrega un agujero negro con cierta capacidad y el tamaño por omisión.
      * @param x coord X
      * @param y coord Y
      * @param capacity número de partículas que puede consumir
+     * @return handle estable del agujero
      */
-    public void addHole(int x, int y, int capacity) {
-        BlackHole hole = new BlackHole(x, y, capacity, visible);
-        holes.add(hole);
+    public long addHole(int x, int y, int capacity) {
+        return addHole(x, y, capacity, BlackHole.SIZE / 2);
+    }
+
+    /**
+     * Agrega un agujero negro de radio dado: se dibuja como un círculo
+     * con la esquina superior izquierda en (x, y) y consume las
+     * partículas que pasan por ese círculo.
+     * @param x coord X
+     * @param y coord Y
+     * @param capacity número de partículas que puede consumir
+     * @param radius radio en píxeles, mayor que 0
+     * @return handle estable del agujero, o 0 si el radio no es válido
+     */
+    public long addHole(int x, int y, int capacity, int radius) {
+        if (radius <= 0) {
+            ok = false;
+            showError("Radio inválido: " + radius);
+            return 0;
+        }
+        BlackHole hole = new BlackHole(x, y, capacity, radius, visible);
+        hole.handle = holes.add(hole);
+        activeHoles.add(hole);
         ok = true;
+        return hole.handle;
+    }
+
+    /**
+     * Busca un agujero negro por su handle.
+     * @param handle handle devuelto por addHole
+     * @return el agujero, o null si no existe
+     */
+    public BlackHole getHole(long handle) {
+        BlackHole h = holes.lookup(handle);
+        ok = h != null;
+        return h;
     }
 
     /**
      * Mueve las partículas 'steps' veces.
      * Cada paso:
-     * 1. Mueve cada partícula
-     * 2. Verifica bordes
-     * 3. Verifica agujeros
+     * 1. Mueve cada partícula según su velocidad
+     * 2. La refleja en los bordes
+     * 3. Verifica agujeros a lo largo del tramo recorrido
      * Pausa ligeramente si está en modo visible.
      * @param steps número de pasos
      */
     public void start(int steps) {
+        run(steps, null);
+        ok = true;
+    }
+
+    /**
+     * Mueve las partículas hasta que se cumpla la condición o hasta
+     * 'maxSteps' pasos, lo que ocurra primero. La condición se evalúa
+     * antes del primer paso y después de cada uno.
+     * @param condition cuándo terminar, por ejemplo {@link StopCondition#noParticles()}
+     * @param maxSteps número máximo de pasos
+     * @return número de pasos ejecutados
+     */
+    public int runUntil(StopCondition condition, int maxSteps) {
+        int done = run(maxSteps, condition);
+        ok = true;
+        return done;
+    }
+
+    /**
+     * Fija la semilla de todos los generadores aleatorios del contenedor.
+     * Con la misma semilla, los escenarios de addRandomParticles y los
+     * números de cada randomStream se repiten exactamente.
+     * @param seed semilla
+     */
+    public void setSeed(long seed) {
+        reseed(seed);
+        ok = true;
+    }
+
+    /**
+     * @return semilla actual; sirve para repetir una corrida que no la fijó
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Generador propio de un hilo o shard. Todos salen de la semilla en
+     * un orden fijo, así que el generador i da los mismos números en cada
+     * corrida con la misma semilla, y ninguno se comparte entre hilos.
+     * @param worker número de hilo o shard, desde 0
+     * @return el generador de ese hilo; siempre el mismo objeto
+     */
+    public SplittableRandom randomStream(int worker) {
+        ok = true;
+        return workerStreams.stream(worker);
+    }
+
+    /**
+     * Agrega partículas al azar, con posiciones dentro de la caja,
+     * velocidades entre -maxSpeed y maxSpeed y colores de la lista.
+     * Se generan en trozos de 4096 en paralelo, cada trozo con su propio
+     * generador, y se agregan en orden: el escenario depende solo de la
+     * semilla, no del número de hilos.
+     * @param count número de partículas
+     * @param colors colores a elegir
+     * @param maxSpeed velocidad máxima por eje, en 1/UNIT de píxel por paso
+     * @return handles de las partículas, o null si los datos no son válidos
+     *         o la caja es demasiado chica para ubicarlas
+     */
+    public long[] addRandomParticles(int count, String[] colors, int maxSpeed) {
+        if (count < 0 || colors == null || colors.length == 0 || maxSpeed < 0) {
+            ok = false;
+            showError("Datos inválidos para generar partículas.");
+            return null;
+        }
+        if (width <= 10 || height <= 10) {
+            ok = false;
+            showError("El contenedor es muy chico para generar partículas: " + width + "x" + height);
+            return null;
+        }
+        int chunks = (count + RANDOM_CHUNK - 1) / RANDOM_CHUNK;
+        int first = nextScenarioChunk;
+        nextScenarioChunk += chunks;
+        if (chunks > 0) {
+            scenarioStreams.stream(first + chunks - 1); // deriva todos en orden
+        }
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        int[] vxs = new int[count];
+        int[] vys = new int[count];
+        String[] cs = new String[count];
+        int maxX = width - 10;
+        int maxY = height - 10;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            SplittableRandom r = scenarioStreams.stream(first + c);
+            int end = Math.min(count, (c + 1) * RANDOM_CHUNK);
+            for (int i = c * RANDOM_CHUNK; i < end; i++) {
+                xs[i] = r.nextInt(maxX + 1);
+                ys[i] = r.nextInt(maxY + 1);
+                vxs[i] = r.nextInt(-maxSpeed, maxSpeed + 1);
+                vys[i] = r.nextInt(-maxSpeed, maxSpeed + 1);
+                cs[i] = colors[r.nextInt(colors.length)];
+            }
+        });
+        return addParticles(count, xs, ys, cs, vxs, vys);
+    }
+
+    /**
+     * Busca las partículas a distancia menor o igual a 'radius' de (x, y).
+     * Usa la rejilla espacial que start mantiene al día, así que solo se
+     * miran las partículas de las celdas cercanas.
+     * @return handles de las partículas encontradas
+     */
+    public long[] particlesNear(int x, int y, int radius) {
+        int n = grid.query(x, y, radius);
+        long[] found = new long[n];
+        for (int i = 0; i < n; i++) {
+            found[i] = particles.handleAt(grid.found(i));
+        }
+        ok = true;
+        return found;
+    }
+
+    /**
+     * Busca las partículas al alcance de un demonio.
+     * @param handle handle devuelto por addDemon
+     * @param radius alcance en píxeles
+     * @return handles de las partículas encontradas, o null si el demonio no existe
+     */
+    public long[] particlesNearDemon(long handle, int radius) {
+        Demon d = demons.lookup(handle);
+        if (d == null) {
+            ok = false;
+            showError("Demonio no encontrado.");
+            return null;
+        }
+        return particlesNear(d.getX(), d.getY(), radius);
+    }
+
+    /**
+     * @return número actual de partículas
+     */
+    public int getParticleCount() {
+        return particles.size();
+    }
+
+    /**
+     * @return true si hay agujeros negros y ninguno tiene capacidad
+     */
+    public boolean allHolesFull() {
+        return !holes.isEmpty() && activeHoles.size() == 0;
+    }
+
+    /**
+     * Qué tan separados están los colores entre las cámaras (mitad
+     * izquierda o derecha): 1 menos la entropía de mezcla dentro de las
+     * cámaras relativa a la de todo el contenedor.
+     * @return 1 si ningún color comparte cámara con otro, 0 si las dos
+     *         cámaras tienen la misma mezcla (o todo está en una sola)
+     */
+    public double getSortedFraction() {
+        return chambers.sortedFraction();
+    }
+
+    /**
+     * @return pasos seguidos sin cruces de cámara ni consumos
+     */
+    public long getStepsWithoutChange() {
+        return stepCount - lastChangeStep;
+    }
+
+    /**
+     * Mueve 'steps' veces las partículas de un almacén fuera del heap,
+     * con las mismas paredes y agujeros negros de este contenedor.
+     * Esas partículas no se dibujan ni generan eventos.
+     * @param store partículas a mover
+     * @param steps número de pasos
+     */
+    public void start(OffHeapParticleStore store, int steps) {
         for (int i = 0; i < steps; i++) {
-            // Importante: recorrer con índice o un for-each normal, 
-            // pero ten cuidado si eliminas objetos en medio del bucle.
-            for (int j = 0; j < particles.size(); j++) {
-                Particle p = particles.get(j);
-                p.move();
-                checkBoundaries(p);
-                checkHoles(p);
+            long stepStart = System.nanoTime();
+            long moved = store.size();
+            int consumed = store.step(width - 10, height - 10, activeHoles);
+            metrics.recordConsumptions(consumed);
+            metrics.recordStep(System.nanoTime() - stepStart, moved, 0);
+            stepCount++;
+        }
+        ok = true;
+    }
+
+    /**
+     * Prepara una simulación repartida entre varios procesos con el
+     * estado actual del contenedor: sus agujeros con capacidad y sus
+     * partículas, con la paleta de colores del contenedor. El contenedor
+     * no cambia; hay que lanzar los shards, llamar run en el resultado y
+     * después {@link #merge(ShardedSimulation)} para traer lo que pasó.
+     * @param file archivo compartido, se crea o se reemplaza
+     * @param shards número de procesos
+     * @return el coordinador, o null si no se pudo crear
+     */
+    public ShardedSimulation shard(Path file, int shards) {
+        if (shards < 1 || shards > SharedRegion.MAX_SHARDS) {
+            ok = false;
+            showError("Shards entre 1 y " + SharedRegion.MAX_SHARDS + ": " + shards);
+            return null;
+        }
+        // el buffer de semillas de cada shard, del tamaño justo de su franja
+        int[] seeds = new int[shards];
+        for (Particle p : particles) {
+            seeds[ShardedSimulation.owner(p.getX(), shards, width)]++;
+        }
+        int n = Math.max(particles.size(), 1024);
+        try {
+            ShardedSimulation sim = ShardedSimulation.create(file, shards, width, height,
+                                                             Math.min(n, 1 << 16), seeds);
+            sim.setSeed(seed);
+            long[] holeHandles = new long[holes.size()];
+            int nHoles = 0;
+            for (BlackHole h : holes) {
+                if (h.isFull()) {
+                    continue;
+                }
+                if (!sim.addHole(h.getX(), h.getY(), h.getCapacity(), h.getRadius())) {
+                    ok = false;
+                    showError("Demasiados agujeros para repartir la simulación.");
+                    return null;
+                }
+                holeHandles[nHoles++] = h.handle;
             }
+            long[] particleHandles = new long[particles.size()];
+            for (int i = 0; i < particleHandles.length; i++) {
+                Particle p = particles.get(i);
+                sim.seed(p.getFixedX(), p.getFixedY(), p.getVelocityX(), p.getVelocityY(),
+                         p.colorIndex);
+                particleHandles[i] = p.handle;
+            }
+            sim.source = this;
+            sim.particleHandles = particleHandles;
+            sim.holeHandles = Arrays.copyOf(holeHandles, nHoles);
+            ok = true;
+            return sim;
+        } catch (IOException | IllegalArgumentException e) {
+            ok = false;
+            showError("No se pudo repartir la simulación: " + e.getMessage());
+            return null;
+        }
+    }
 
-            // Pequeña pausa para ver animación
-            if (visible) {
-                waitSomeTime(10);
+    /**
+     * Trae el resultado de una simulación repartida que salió de
+     * {@link #shard(Path, int)} y ya corrió: cada partícula toma la
+     * posición y la velocidad con que terminó, las que consumió un agujero
+     * se quitan y cada agujero suma lo que consumió. El contenedor cuenta
+     * los pasos corridos. Lo que se borró del contenedor después de shard
+     * se ignora.
+     * @param sim simulación creada por shard en este contenedor
+     */
+    public void merge(ShardedSimulation sim) {
+        if (sim == null || sim.source != this || !sim.isFinished()) {
+            ok = false;
+            showError("La simulación no salió de este contenedor o no se corrió.");
+            return;
+        }
+        long[] handles = sim.particleHandles;
+        boolean[] returned = new boolean[handles.length];
+        boolean changed = false;
+        int middle = width / 2;
+        for (int r = 0; r < sim.getResultCount(); r++) {
+            int id = sim.getResultId(r);
+            Particle p = particles.lookup(handles[id]);
+            if (p != null) {
+                boolean left = p.getX() < middle;
+                p.place(sim.getResultFixedX(r), sim.getResultFixedY(r),
+                        sim.getResultVelocityX(r), sim.getResultVelocityY(r));
+                changed |= left != p.getX() < middle;
+                returned[id] = true;
+            }
+        }
+        Canvas canvas = visible && !interpolate ? Canvas.getCanvas() : null;
+        if (canvas != null) {
+            canvas.beginBatch();
+        }
+        try {
+            for (int id = 0; id < handles.length; id++) {
+                int i = returned[id] ? -1 : particles.indexOf(handles[id]);
+                if (i >= 0) {
+                    particles.get(i).makeInvisible();
+                    removeParticleAt(i);
+                    changed = true;
+                }
+            }
+        } finally {
+            if (canvas != null) {
+                canvas.endBatch();
+            }
+        }
+        for (int h = 0; h < sim.holeHandles.length; h++) {
+            BlackHole hole = holes.lookup(sim.holeHandles[h]);
+            for (int k = hole == null ? 0 : sim.getHoleFill(h); k > 0; k--) {
+                hole.consumeParticle();
+            }
+        }
+        activeHoles.clear();
+        for (BlackHole h : holes) {
+            activeHoles.add(h);
+        }
+        chambers.clear();
+        for (Particle p : particles) {
+            chambers.add(chamberOf(p.getX()), p.colorIndex, 1);
+        }
+        rebuildGrid();
+        stepCount += sim.steps();
+        if (changed) {
+            lastChangeStep = stepCount; // no se sabe en qué paso: el último
+        }
+        ok = true;
+    }
+
+    /**
+     * Activa el registro termodinámico: en cada paso de start se calcula,
+     * dentro del mismo recorrido de partículas, la entropía de mezcla de
+     * colores entre las dos cámaras (mitades izquierda y derecha) y la
+     * energía cinética media de cada cámara.
+     */
+    public void enableThermodynamics() {
+        if (thermo == null) {
+            thermo = new ThermoSeries();
+            thermoStep = new ThermoAccumulator(colorNames.size());
+        }
+        ok = true;
+    }
+
+    /**
+     * @return serie termodinámica, o null si no se activó
+     */
+    public ThermoSeries getThermoSeries() {
+        return thermo;
+    }
+
+    /**
+     * Empieza a escribir en el archivo una fila de CSV por cada paso de
+     * start o runUntil: paso, partículas, partículas de cada color,
+     * partículas consumidas por cada agujero y cruces de cámara en el paso.
+     * La escritura al disco se hace en otro hilo; el archivo queda completo
+     * al llamar stopStats o finish. Si cambia la cantidad de colores o de
+     * agujeros, las filas siguientes van a "nombre.1.csv", "nombre.2.csv"...
+     * cada uno con su encabezado.
+     * @param file archivo de destino, se crea o se trunca
+     */
+    public void recordStats(Path file) {
+        stopStats();
+        try {
+            stats = new StatsWriter(file);
+            ok = true;
+        } catch (IOException e) {
+            ok = false;
+            showError("No se pudo abrir el archivo de estadísticas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Termina de escribir las estadísticas y cierra el archivo.
+     */
+    public void stopStats() {
+        ok = true;
+        if (stats != null) {
+            try {
+                stats.close();
+            } catch (IOException e) {
+                ok = false;
+                showError("No se pudieron escribir las estadísticas: " + e.getMessage());
             }
+            stats = null;
+        }
+    }
+
+    /**
+     * Publicador de frames: después de cada paso de start o runUntil,
+     * si hay suscriptores, se les entrega una foto de las partículas.
+     * Cada suscriptor elige su política de contrapresión al suscribirse.
+     * finish completa a los suscriptores.
+     * @return publicador de frames de este contenedor
+     */
+    public FramePublisher frames() {
+        if (frames == null) {
+            frames = new FramePublisher();
+        }
+        ok = true;
+        return frames;
+    }
+
+    /**
+     * Activa o desactiva el dibujo interpolado. Activado, en modo visible
+     * las partículas se dibujan al ritmo de la pantalla en posiciones
+     * intermedias entre los dos últimos pasos, así que la simulación puede
+     * ir a cualquier ritmo (ver setStepDelay) y el movimiento se ve suave.
+     * Desactivado, cada paso mueve directamente las figuras.
+     * @param on true para interpolar
+     */
+    public void setInterpolation(boolean on) {
+        if (on != interpolate) {
+            boolean wasVisible = visible;
+            if (wasVisible) {
+                makeInvisible();
+            }
+            interpolate = on;
+            if (wasVisible) {
+                makeVisible();
+            }
+        }
+        ok = true;
+    }
+
+    /**
+     * Cambia la pausa entre pasos en modo visible (10 ms por defecto).
+     * Con dibujo interpolado se puede subir para ver en cámara lenta o
+     * poner en 0 para simular a toda velocidad.
+     * @param ms milisegundos, 0 o más
+     */
+    public void setStepDelay(int ms) {
+        if (ms < 0) {
+            ok = false;
+            showError("La pausa no puede ser negativa.");
+            return;
+        }
+        stepDelay = ms;
+        ok = true;
+    }
+
+    /**
+     * Reordena las partículas cada 'steps' pasos de start según la curva
+     * de Morton de su posición, para que partículas cercanas en la caja
+     * queden cercanas en memoria y el recorrido de cada paso aproveche
+     * mejor la caché. Solo cambian las posiciones de las partículas en la
+     * lista y en la rejilla: los objetos y los handles siguen siendo los
+     * mismos, así que un Particle obtenido antes sigue sirviendo para
+     * deleteParticle. Como cambia el orden
+     * en que se mueven las partículas, cuando dos compiten por la última
+     * unidad de capacidad de un agujero puede ganar otra. 0 lo desactiva
+     * (así empieza el contenedor).
+     * @param steps pasos entre reordenamientos, 0 o más
+     */
+    public void setReorderInterval(int steps) {
+        if (steps < 0) {
+            ok = false;
+            showError("El intervalo no puede ser negativo.");
+            return;
+        }
+        reorderInterval = steps;
+        ok = true;
+    }
+
+    /**
+     * Suscribe un listener a los eventos de la simulación: partículas
+     * consumidas, agujeros llenos, rebotes en paredes y cruces de la
+     * compuerta. Los eventos se entregan en lotes desde otro hilo. Si un
+     * listener lanza una excepción los demás siguen recibiendo eventos, y
+     * el siguiente awaitEvents muestra el error y deja ok() en false.
+     * @param listener quien recibe los eventos
+     */
+    public void addListener(SimulationListener listener) {
+        if (events == null) {
+            events = new EventDispatcher();
+        }
+        events.addListener(listener);
+        ok = true;
+    }
+
+    /**
+     * Cancela la suscripción de un listener. Al quitar el último se
+     * detiene el hilo de eventos.
+     * @param listener quien dejará de recibir eventos
+     */
+    public void removeListener(SimulationListener listener) {
+        if (events != null) {
+            events.removeListener(listener);
+            if (!events.hasListeners()) {
+                stopEvents();
+            }
+        }
+        ok = true;
+    }
+
+    /**
+     * Entrega los eventos pendientes y detiene el hilo de eventos.
+     */
+    private void stopEvents() {
+        if (events != null) {
+            events.close();
+            events = null;
         }
+    }
+
+    /**
+     * Espera a que los listeners hayan recibido todos los eventos
+     * de los pasos ya ejecutados. ok() queda en false si un listener
+     * falló desde la última espera.
+     */
+    public void awaitEvents() {
+        awaitEvents(Long.MAX_VALUE);
+    }
+
+    /**
+     * Como awaitEvents, esperando a lo sumo timeoutMillis. ok() queda en
+     * false si no se entregó todo a tiempo o si un listener falló.
+     * @param timeoutMillis espera máxima en milisegundos
+     */
+    public void awaitEvents(long timeoutMillis) {
         ok = true;
+        if (events == null) {
+            return;
+        }
+        long nanos = timeoutMillis >= Long.MAX_VALUE / 1_000_000L ? Long.MAX_VALUE / 2
+                     : timeoutMillis * 1_000_000L;
+        if (!events.awaitDelivery(nanos)) {
+            ok = false;
+            showError("Los listeners no recibieron todos los eventos.");
+        }
+        RuntimeException failure = events.takeFailure();
+        if (failure != null) {
+            ok = false;
+            showError("Un listener de eventos falló: " + failure);
+        }
+    }
+
+    /**
+     * @return eventos perdidos porque los listeners no alcanzaban a leerlos
+     */
+    public long droppedEvents() {
+        return events == null ? 0 : events.ring().dropped();
     }
 
     /**
@@ -163,22 +888,76 @@ public class MaxwellContainer {
                "\nHoles: " + holes.size();
     }
 
+    /**
+     * @return métricas de la simulación de este contenedor
+     */
+    public MaxwellMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Publica las métricas como MBean en el servidor JMX de la plataforma,
+     * bajo "Maxwell:type=MaxwellContainer,name=<name>". Si ya estaban
+     * publicadas con otro nombre, ese se quita. finish las quita.
+     * @param name nombre que distingue a este contenedor
+     */
+    public void registerMetrics(String name) {
+        unregisterMetrics();
+        try {
+            ObjectName objectName = new ObjectName("Maxwell:type=MaxwellContainer,name="
+                                                   + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            metricsName = objectName;
+            ok = true;
+        } catch (JMException e) {
+            ok = false;
+            showError("No se pudieron registrar las métricas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Quita las métricas del servidor JMX, si estaban publicadas.
+     */
+    public void unregisterMetrics() {
+        ok = true;
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                ok = false;
+                showError("No se pudieron quitar las métricas: " + e.getMessage());
+            }
+            metricsName = null;
+        }
+    }
+
     /**
      * Hace visible el contenedor, mostrando la caja de fondo y todos los objetos.
      */
     public void makeVisible() {
         visible = true;
-        // Muestra la caja de fondo (si la usas)
-        containerBox.makeVisible();
+        // Todos los cambios van al canvas en un solo lote y un solo repintado
+        Canvas canvas = Canvas.getCanvas();
+        canvas.beginBatch();
+        try {
+            // Muestra la caja de fondo (si la usas)
+            containerBox.makeVisible();
 
-        for (Demon d : demons) {
-            d.makeVisible();
-        }
-        for (Particle p : particles) {
-            p.makeVisible();
-        }
-        for (BlackHole h : holes) {
-            h.makeVisible();
+            for (Demon d : demons) {
+                d.makeVisible();
+            }
+            if (interpolate) {
+                startRenderer();
+            } else {
+                for (Particle p : particles) {
+                    p.makeVisible();
+                }
+            }
+            for (BlackHole h : holes) {
+                h.makeVisible();
+            }
+        } finally {
+            canvas.endBatch();
         }
         ok = true;
     }
@@ -187,17 +966,30 @@ public class MaxwellContainer {
      * Hace invisible el contenedor y todo lo que contenga.
      */
     public void makeInvisible() {
-        visible = false;
-        for (Demon d : demons) {
-            d.makeInvisible();
-        }
-        for (Particle p : particles) {
-            p.makeInvisible();
+        if (!visible) {
+            // nada está en el canvas; no hace falta crearlo
+            ok = true;
+            return;
         }
-        for (BlackHole h : holes) {
-            h.makeInvisible();
+        visible = false;
+        // Se quitan todos del canvas en una sola pasada
+        Canvas canvas = Canvas.getCanvas();
+        canvas.beginBatch();
+        try {
+            for (Demon d : demons) {
+                d.makeInvisible();
+            }
+            for (Particle p : particles) {
+                p.makeInvisible();
+            }
+            for (BlackHole h : holes) {
+                h.makeInvisible();
+            }
+            containerBox.makeInvisible();
+            stopRenderer();
+        } finally {
+            canvas.endBatch();
         }
-        containerBox.makeInvisible();
         ok = true;
     }
 
@@ -205,10 +997,20 @@ public class MaxwellContainer {
      * Termina la simulación, vaciando todo.
      */
     public void finish() {
+        stopStats();
+        stopEvents();
+        unregisterMetrics();
+        if (frames != null) {
+            frames.close();
+            frames = null;
+        }
         makeInvisible();
         demons.clear();
         particles.clear();
         holes.clear();
+        activeHoles.clear();
+        chambers.clear();
+        grid.reset(width, height);
         ok = true;
     }
 
@@ -251,34 +1053,311 @@ public class MaxwellContainer {
     // ----------------
 
     /**
-     * Verifica si la partícula salió de los bordes y la hace rebotar.
+     * Ejecuta hasta 'maxSteps' pasos, deteniéndose antes si la condición
+     * (cuando no es null) se cumple.
+     * @return número de pasos ejecutados
      */
-    private void checkBoundaries(Particle p) {
-        if (p.getX() < 0 || p.getX() > (width - 10)) {
-            p.reverseX();
+    private int run(int maxSteps, StopCondition condition) {
+        if (condition != null && condition.reached(this)) {
+            return 0;
         }
-        if (p.getY() < 0 || p.getY() > (height - 10)) {
-            p.reverseY();
+        StepBatchEvent batch = null;
+        // un listener puede quitarse durante la corrida y cerrar 'events'
+        EventDispatcher dispatcher = events != null && events.hasListeners() ? events : null;
+        recording = dispatcher != null ? dispatcher.ring() : null;
+        int gateX = demons.isEmpty() ? -1 : width / 2;
+        int middle = width / 2;
+        int done = 0;
+        while (done < maxSteps) {
+            if (reorderInterval > 0 && stepCount % reorderInterval == 0) {
+                reorderParticles();
+            }
+            if (done % STEP_BATCH == 0) {
+                batch = new StepBatchEvent();
+                batch.begin();
+            }
+            long stepStart = System.nanoTime();
+            // el canvas cuenta por hilo: solo los cambios de este paso
+            long canvasChanges = visible ? Canvas.submittedChanges() : 0;
+            int moved = 0;
+            int consumed = 0;
+            int crossings = 0;
+            // Importante: recorrer con índice o un for-each normal, 
+            // pero ten cuidado si eliminas objetos en medio del bucle.
+            for (int j = 0; j < particles.size(); j++) {
+                Particle p = particles.get(j);
+                int bounced = p.move(width - 10, height - 10);
+                grid.move(j, p.getX(), p.getY());
+                boolean left = p.getX() < middle;
+                if (left != (p.getPreviousX() < middle)) {
+                    chambers.cross(left ? 0 : 1, p.colorIndex);
+                    lastChangeStep = stepCount + 1; // stepCount aún no cuenta este paso
+                    crossings++;
+                }
+                if (recording != null) {
+                    recordMove(p, bounced, gateX);
+                }
+                moved++;
+                if (checkHoles(p, j)) {
+                    consumed++;
+                    j--; // la última partícula ocupa ahora la posición j
+                } else if (thermoStep != null) {
+                    thermoStep.add(left ? 0 : 1, p.colorIndex, p.getKineticEnergy());
+                }
+            }
+            if (thermoStep != null) {
+                thermo.record(stepCount, thermoStep);
+                thermoStep.reset(colorNames.size());
+            }
+            if (stats != null) {
+                stats.row(stepCount, particles.size(), chambers, colorNames, holes, crossings);
+            }
+            if (frames != null && frames.hasSubscribers()) {
+                frames.publish(snapshot());
+            }
+            // cambios que llegaron a la cola del canvas durante el paso
+            metrics.recordStep(System.nanoTime() - stepStart, moved,
+                               visible ? Canvas.submittedChanges() - canvasChanges : 0);
+            batch.steps++;
+            batch.particleSteps += moved;
+            batch.consumed += consumed;
+            stepCount++;
+            done++;
+            if (dispatcher != null) {
+                dispatcher.publish();
+            }
+
+            // Pequeña pausa para ver animación
+            if (visible && stepDelay > 0) {
+                waitSomeTime(stepDelay);
+            }
+            boolean stop = condition != null && condition.reached(this);
+            if (stop || done % STEP_BATCH == 0 || done == maxSteps) {
+                commitBatch(batch);
+            }
+            if (stop) {
+                break;
+            }
         }
+        recording = null;
+        return done;
     }
 
     /**
      * Verifica colisiones con agujeros.
+     * Solo se consultan los agujeros con capacidad: los llenos ya
+     * fueron retirados del índice y no tapan a los demás.
+     * @param index posición de la partícula en particles
+     * @return true si un agujero consumió la partícula
      */
-    private void checkHoles(Particle p) {
-        for (int i = 0; i < holes.size(); i++) {
-            BlackHole h = holes.get(i);
-            int dx = p.getX() - h.getX();
-            int dy = p.getY() - h.getY();
-            double dist = Math.sqrt(dx*dx + dy*dy);
-            if (dist < 20) {
-                // si el agujero tiene capacidad, consume
-                if (h.consumeParticle()) {
-                    p.makeInvisible();
-                    particles.remove(p);
+    private boolean checkHoles(Particle p, int index) {
+        if (activeHoles.size() == 0) {
+            return false;
+        }
+        BlackHole h = activeHoles.capture(p.getPreviousX(), p.getPreviousY(),
+                                           p.getX(), p.getY());
+        if (h != null) {
+            p.makeInvisible();
+            removeParticleAt(index);
+            chambers.add(chamberOf(p.getX()), p.colorIndex, -1);
+            lastChangeStep = stepCount + 1; // stepCount aún no cuenta este paso
+            metrics.recordConsumption();
+            if (recording != null) {
+                recording.offer(EventBatch.CONSUMED, stepCount, p.getX(), p.getY(),
+                                h.getX(), h.getY());
+                if (h.isFull()) {
+                    recording.offer(EventBatch.HOLE_FULL, stepCount, p.getX(), p.getY(),
+                                    h.getX(), h.getY());
                 }
-                break; 
             }
+            HoleCaptureEvent event = new HoleCaptureEvent();
+            if (event.shouldCommit()) {
+                event.holeX = h.getX();
+                event.holeY = h.getY();
+                event.particleX = p.getX();
+                event.particleY = p.getY();
+                event.holeFull = h.isFull();
+                event.activeHoles = activeHoles.size();
+                event.commit();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ordena las partículas por el código de Morton de su posición. Cada
+     * clave junta el código (32 bits altos, con el signo invertido para
+     * que la comparación sea sin signo) con el índice actual (bajos), así
+     * se ordenan primitivos y de ahí sale la permutación.
+     */
+    private void reorderParticles() {
+        int n = particles.size();
+        if (n < 2) {
+            return;
+        }
+        if (mortonKeys == null || mortonKeys.length < n) {
+            mortonKeys = new long[Math.max(n, 16) * 2];
+            mortonOrder = new int[mortonKeys.length];
+        }
+        for (int i = 0; i < n; i++) {
+            Particle p = particles.get(i);
+            long code = morton(p.getX(), p.getY()) & 0xFFFFFFFFL;
+            mortonKeys[i] = (code << 32 ^ Long.MIN_VALUE) | i;
+        }
+        Arrays.sort(mortonKeys, 0, n);
+        for (int i = 0; i < n; i++) {
+            mortonOrder[i] = (int) mortonKeys[i];
+        }
+        particles.permute(mortonOrder);
+        rebuildGrid();
+    }
+
+    /**
+     * @return código de Morton: los bits de x e y intercalados
+     */
+    static int morton(int x, int y) {
+        return spreadBits(x) | spreadBits(y) << 1;
+    }
+
+    /**
+     * Separa los 16 bits bajos de v dejando un cero entre cada uno.
+     */
+    private static int spreadBits(int v) {
+        v &= 0xFFFF;
+        v = (v | v << 8) & 0x00FF00FF;
+        v = (v | v << 4) & 0x0F0F0F0F;
+        v = (v | v << 2) & 0x33333333;
+        v = (v | v << 1) & 0x55555555;
+        return v;
+    }
+
+    /**
+     * Rehace la jerarquía de generadores a partir de la semilla: la raíz
+     * se divide en la familia de los escenarios y la de los hilos.
+     */
+    private void reseed(long seed) {
+        this.seed = seed;
+        SplittableRandom root = new SplittableRandom(seed);
+        scenarioStreams = new RandomStreams(root.split());
+        workerStreams = new RandomStreams(root.split());
+        nextScenarioChunk = 0;
+    }
+
+    /**
+     * Empieza a dibujar las partículas interpoladas y publica el estado
+     * actual para que aparezcan antes del primer paso.
+     */
+    private void startRenderer() {
+        if (renderer != null) {
+            return;
+        }
+        renderer = new InterpolatingRenderer(frames());
+        renderer.start();
+        frames.publish(snapshot());
+    }
+
+    private void stopRenderer() {
+        if (renderer != null) {
+            renderer.stop();
+            renderer = null;
+        }
+    }
+
+    /**
+     * Copia el estado actual de las partículas en un frame.
+     */
+    private Frame snapshot() {
+        int n = particles.size();
+        long[] handles = new long[n];
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] colors = new int[n];
+        for (int i = 0; i < n; i++) {
+            Particle p = particles.get(i);
+            handles[i] = p.handle;
+            xs[i] = p.getX();
+            ys[i] = p.getY();
+            colors[i] = p.colorIndex;
+        }
+        if (palette == null || palette.length != colorNames.size()) {
+            palette = colorNames.toArray(new String[0]);
+        }
+        return new Frame(stepCount, handles, xs, ys, colors, palette, width, height,
+                         chambers.sortedFraction());
+    }
+
+    /**
+     * Quita la partícula en la posición i de la tabla y de la rejilla;
+     * la última pasa a ocupar la posición i en las dos.
+     */
+    private void removeParticleAt(int i) {
+        int last = particles.size() - 1;
+        particles.removeAt(i);
+        grid.remove(i);
+        if (i != last) {
+            grid.relocate(last, i);
+        }
+    }
+
+    /**
+     * Vuelve a llenar la rejilla con las posiciones actuales. Se agregan
+     * de atrás para adelante para que cada celda quede en el orden de
+     * las partículas.
+     */
+    private void rebuildGrid() {
+        grid.reset(width, height);
+        for (int i = particles.size() - 1; i >= 0; i--) {
+            Particle p = particles.get(i);
+            grid.add(i, p.getX(), p.getY());
+        }
+    }
+
+    /**
+     * @return cámara de la coordenada x: 0 izquierda, 1 derecha
+     */
+    private int chamberOf(int x) {
+        return x < width / 2 ? 0 : 1;
+    }
+
+    /**
+     * Devuelve el índice del color en la paleta, agregándolo si es nuevo.
+     */
+    private int colorIndex(String color) {
+        Integer id = colorIds.get(color);
+        if (id == null) {
+            id = colorNames.size();
+            colorNames.add(color);
+            colorIds.put(color, id);
+            if (thermoStep != null) {
+                thermoStep.reset(colorNames.size());
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Registra los rebotes de la partícula y si cruzó la compuerta.
+     * La compuerta es la línea vertical x = gateX que separa las dos
+     * cámaras; solo existe si hay demonios (gateX >= 0).
+     */
+    private void recordMove(Particle p, int bounced, int gateX) {
+        if (bounced != 0) {
+            recording.offer(EventBatch.WALL_BOUNCE, stepCount, p.getX(), p.getY(), bounced, 0);
+        }
+        if (gateX >= 0 && (p.getPreviousX() < gateX) != (p.getX() < gateX)) {
+            int direction = p.getX() < gateX ? -1 : 1;
+            recording.offer(EventBatch.GATE_CROSSING, stepCount, p.getX(), p.getY(), direction, 0);
+        }
+    }
+
+    /**
+     * Cierra y emite el evento JFR de un lote de pasos, si se está grabando.
+     */
+    private void commitBatch(StepBatchEvent batch) {
+        if (batch.shouldCommit()) {
+            batch.particles = particles.size();
+            batch.commit();
         }
     }
 
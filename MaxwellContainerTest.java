@@ -4,6 +4,21 @@ import static org.junit.Assert.*;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * Pruebas de unidad para la clase MaxwellContainer.
@@ -67,8 +82,8 @@ public class MaxwellContainerTest {
 
     @Test
     public void testAddHoleAndConsumeParticle() {
-        // Agregar un agujero con capacidad 1
-        container.addHole(50, 50, 1);
+        // Agregar un agujero con capacidad 1, centrado en (50, 50)
+        container.addHole(30, 30, 1);
         container.addParticle(50, 50, "blue");
         // Movemos 1 paso => colisión inmediata
         container.start(1);
@@ -77,5 +92,686 @@ public class MaxwellContainerTest {
         assertTrue(info.contains("Particles: 0"));
         assertTrue(container.ok());
     }
-}
 
+    @Test
+    public void testHoleCapturesAroundItsDrawnCenter() {
+        // Círculo de radio 30 con la esquina en (100, 100): centro (130, 130)
+        long hole = container.addHole(100, 100, 5, 30);
+        assertEquals(30, container.getHole(hole).getRadius());
+        long corner = container.addParticle(100, 100, "blue", 0, 0);  // a 42 del centro
+        long inside = container.addParticle(155, 130, "red", 0, 0);   // a 25 del centro
+        container.start(1);
+        assertNotNull(container.getParticle(corner));
+        assertNull(container.getParticle(inside));
+        container.addHole(10, 10, 1, 0);
+        assertFalse(container.ok());
+    }
+
+    @Test
+    public void testFullHoleDoesNotShadowOtherHoles() {
+        // Un agujero sin capacidad encima de otro que sí tiene
+        container.addHole(30, 30, 0);
+        container.addHole(35, 35, 1);
+        container.addParticle(50, 50, "blue");
+        container.start(1);
+        // El segundo agujero debe consumir la partícula
+        assertTrue(container.consult().contains("Particles: 0"));
+    }
+
+    @Test
+    public void testFastParticleIsCapturedOnItsPath() {
+        // Avanza 80 píxeles por paso y pasa por encima del agujero
+        container.addHole(80, 30, 1);
+        container.addParticle(50, 50, "red", 80 * Particle.UNIT, 0);
+        container.start(1);
+        assertTrue(container.consult().contains("Particles: 0"));
+    }
+
+    @Test
+    public void testListenerReceivesHoleEvents() {
+        List<Integer> types = new ArrayList<>();
+        container.addListener(batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                types.add(batch.type(i));
+            }
+        });
+        container.addHole(30, 30, 1);
+        container.addParticle(50, 50, "blue");
+        container.start(1);
+        container.awaitEvents();
+        assertEquals(2, types.size());
+        assertEquals(Integer.valueOf(EventBatch.CONSUMED), types.get(0));
+        assertEquals(Integer.valueOf(EventBatch.HOLE_FULL), types.get(1));
+    }
+
+    @Test
+    public void testListenerFailuresAndSlowListenersAreReported() throws InterruptedException {
+        List<Integer> received = new ArrayList<>();
+        SimulationListener failing = batch -> {
+            throw new IllegalStateException("falla");
+        };
+        container.addListener(failing);
+        container.addListener(batch -> received.add(batch.size()));
+        container.addHole(30, 30, 1);
+        container.addParticle(50, 50, "blue");
+        container.start(1);
+        container.awaitEvents();
+        assertFalse(container.ok());
+        assertEquals(1, received.size()); // el otro listener recibió el lote
+        container.awaitEvents();
+        assertTrue(container.ok());
+        container.removeListener(failing);
+
+        // un listener que no termina: la espera acotada vuelve con ok() en false
+        CountDownLatch release = new CountDownLatch(1);
+        container.addListener(batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        container.addHole(130, 30, 1);
+        container.addParticle(150, 50, "red");
+        container.start(1);
+        container.awaitEvents(50);
+        assertFalse(container.ok());
+        release.countDown();
+        container.awaitEvents(10_000);
+        assertTrue(container.ok());
+    }
+
+    @Test
+    public void testStepsWithoutChangeCountsFromTheChangingStep() {
+        // Cruza a la cámara derecha en el primer paso y después no cambia
+        container.addParticle(149, 50, "red", 2 * Particle.UNIT, 0);
+        container.start(1);
+        assertEquals(0, container.getStepsWithoutChange());
+        container.start(3);
+        assertEquals(3, container.getStepsWithoutChange());
+        // un consumo también reinicia la cuenta
+        container.addHole(80, 130, 1);
+        container.addParticle(100, 150, "blue", 0, 0);
+        container.start(1);
+        assertEquals(0, container.getStepsWithoutChange());
+    }
+
+    @Test
+    public void testEventThreadStopsWithLastListener() {
+        SimulationListener listener = batch -> { };
+        container.addListener(listener);
+        assertTrue(eventThreadAlive());
+        container.removeListener(listener);
+        assertFalse(eventThreadAlive());
+        // finish también lo detiene, aunque quede alguien escuchando
+        container.addListener(listener);
+        container.addParticle(50, 50, "blue");
+        container.start(3);
+        container.finish();
+        assertFalse(eventThreadAlive());
+    }
+
+    private static boolean eventThreadAlive() {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("maxwell-events") && t.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testThermodynamicSeries() {
+        container.enableThermodynamics();
+        // Partículas quietas: roja a la izquierda, azul y roja a la derecha
+        container.addParticle(10, 10, "red", 0, 0);
+        container.addParticle(200, 10, "blue", 0, 0);
+        container.addParticle(200, 50, "red", 0, 0);
+        container.start(2);
+        ThermoSeries series = container.getThermoSeries();
+        assertEquals(2, series.size());
+        assertEquals(1, series.population(0, 0));
+        assertEquals(2, series.population(0, 1));
+        // la cámara derecha está mezclada (1 bit) y pesa 2/3
+        assertEquals(2.0 / 3.0, series.entropy(1), 1e-9);
+    }
+
+    @Test
+    public void testDeleteParticleByHandle() {
+        long first = container.addParticle(50, 50, "blue");
+        container.deleteParticle(first);
+        assertTrue(container.ok());
+        // El handle viejo no debe apuntar a la partícula que reusa la casilla
+        long second = container.addParticle(60, 60, "red");
+        container.deleteParticle(first);
+        assertFalse(container.ok());
+        assertNotNull(container.getParticle(second));
+        assertTrue(container.consult().contains("Particles: 1"));
+    }
+
+    @Test
+    public void testRunUntilStopsWhenHolesAreFull() {
+        container.addHole(30, 30, 1);
+        container.addParticle(50, 50, "blue");
+        container.addParticle(200, 100, "red");
+        int steps = container.runUntil(StopCondition.holesSaturated(), 1000);
+        // El agujero se llena en el primer paso
+        assertEquals(1, steps);
+        assertTrue(container.ok());
+        assertEquals(0, container.runUntil(StopCondition.holesSaturated(), 1000));
+    }
+
+    @Test
+    public void testResizeKeepsParticlesInside() {
+        long h = container.addParticle(250, 150, "blue");
+        container.addDemon(30, 30);
+        container.resize(100, 100);
+        assertTrue(container.ok());
+        assertTrue(container.consult().contains("Particles: 1"));
+        assertTrue(container.consult().contains("Demons: 1"));
+        Particle p = container.getParticle(h);
+        assertTrue(p.getX() >= 0 && p.getX() <= 90);
+        assertTrue(p.getY() >= 0 && p.getY() <= 90);
+    }
+
+    @Test
+    public void testMappedStoreReopensAsSnapshot() throws IOException {
+        Path file = Files.createTempFile("maxwell", ".particles");
+        OffHeapParticleStore store = OffHeapParticleStore.map(file, 100);
+        Random r = new Random(3);
+        for (int i = 0; i < 60; i++) {
+            assertTrue(store.add(r.nextInt(290), r.nextInt(190),
+                                 r.nextInt(4 * Particle.UNIT) - 2 * Particle.UNIT,
+                                 r.nextInt(4 * Particle.UNIT) - 2 * Particle.UNIT, i % 3));
+        }
+        container.addHole(150, 100, 5);
+        container.start(store, 20);
+        store.force();
+
+        OffHeapParticleStore reopened = OffHeapParticleStore.map(file, 100);
+        assertEquals(store.size(), reopened.size());
+        for (long i = 0; i < store.size(); i++) {
+            assertEquals(store.getX(i), reopened.getX(i));
+            assertEquals(store.getY(i), reopened.getY(i));
+            assertEquals(store.getVelocityX(i), reopened.getVelocityX(i));
+            assertEquals(store.getVelocityY(i), reopened.getVelocityY(i));
+            assertEquals(store.getColor(i), reopened.getColor(i));
+        }
+        // las partículas agregadas después también quedan en el archivo
+        assertTrue(reopened.add(10, 20, 0, 0, 2));
+        OffHeapParticleStore third = OffHeapParticleStore.map(file, 100);
+        assertEquals(store.size() + 1, third.size());
+        assertEquals(20, third.getY(third.size() - 1));
+        // no se puede abrir con menos capacidad que partículas
+        try {
+            OffHeapParticleStore.map(file, 10);
+            fail("Debió rechazar la capacidad menor");
+        } catch (IOException expected) {
+            // bien
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    public void testStoreAddAtCapacityFails() throws IOException {
+        OffHeapParticleStore store = OffHeapParticleStore.allocate(3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(store.add(10 * i, 10, 0, 0, 0));
+        }
+        assertFalse(store.add(40, 10, 0, 0, 0));
+        assertEquals(3, store.size());
+        assertEquals(20, store.getX(2));
+
+        Path file = Files.createTempFile("maxwell", ".particles");
+        OffHeapParticleStore mapped = OffHeapParticleStore.map(file, 2);
+        assertTrue(mapped.add(1, 1, 0, 0, 0));
+        assertTrue(mapped.add(2, 2, 0, 0, 0));
+        assertFalse(mapped.add(3, 3, 0, 0, 0));
+        assertEquals(2, OffHeapParticleStore.map(file, 2).size());
+        Files.delete(file);
+    }
+
+    @Test
+    public void testCanvasMutationsAttributeCountsQueuedChanges() throws Exception {
+        container.registerMetrics("canvas-mutations");
+        assertTrue(container.ok());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("Maxwell:type=MaxwellContainer,name="
+                                         + ObjectName.quote("canvas-mutations"));
+        // Invisible ningún paso toca el canvas
+        container.addParticle(50, 50, "blue", Particle.UNIT, 0);
+        container.setStepDelay(0);
+        container.start(3);
+        assertEquals(3L, server.getAttribute(name, "TotalSteps"));
+        assertEquals(0L, server.getAttribute(name, "CanvasMutations"));
+        assertEquals(0L, server.getAttribute(name, "CanvasMutationsLastFrame"));
+
+        // Visible, con otro contenedor visible moviendo figuras desde otro
+        // hilo: cada paso mueve una sola figura, la que cambió de píxel
+        MaxwellContainer other = new MaxwellContainer();
+        other.create(300, 200);
+        for (int i = 0; i < 100; i++) {
+            other.addParticle(10 + i * 2, 100, "red", Particle.UNIT, Particle.UNIT);
+        }
+        other.setStepDelay(0);
+        other.makeVisible();
+        Thread busy = new Thread(() -> other.start(2_000));
+        container.makeVisible();
+        container.addParticle(100, 50, "red", 1, 0); // menos de un píxel por paso
+        busy.start();
+        container.start(200);
+        busy.join();
+        other.finish();
+        assertEquals(200L, server.getAttribute(name, "CanvasMutations"));
+        assertEquals(1L, server.getAttribute(name, "CanvasMutationsLastFrame"));
+
+        // finish quita el MBean
+        container.finish();
+        assertTrue(container.ok());
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testVisibleMovesDoNotAllocatePerParticle() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Random r = new Random(5);
+        int n = 2000;
+        for (int i = 0; i < n; i++) {
+            // al menos un píxel por paso: cada paso mueve todas las figuras
+            container.addParticle(10 + r.nextInt(270), 10 + r.nextInt(170), "red",
+                                  (r.nextBoolean() ? 1 : -1) * (Particle.UNIT + r.nextInt(Particle.UNIT)),
+                                  (r.nextBoolean() ? 1 : -1) * (Particle.UNIT + r.nextInt(Particle.UNIT)));
+        }
+        container.setStepDelay(0);
+        container.makeVisible();
+        container.start(20);
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        int steps = 50;
+        container.start(steps);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // un objeto por movimiento ocuparía 16 bytes o más
+        assertTrue("bytes por movimiento: " + (double) allocated / (n * steps),
+                   allocated < (long) n * steps * 2);
+    }
+
+    @Test
+    public void testStatsFileHasOneRowPerStep() throws IOException {
+        Path file = Files.createTempFile("maxwell", ".csv");
+        container.addHole(30, 30, 1);
+        container.addParticle(50, 50, "blue");
+        container.addParticle(200, 100, "red");
+        container.recordStats(file);
+        assertTrue(container.ok());
+        container.start(5);
+        container.stopStats();
+        assertTrue(container.ok());
+        List<String> lines = Files.readAllLines(file);
+        Files.delete(file);
+        assertEquals(6, lines.size());
+        assertEquals("step,particles,blue,red,hole0,crossings", lines.get(0));
+        // en el primer paso el agujero consume la partícula azul
+        assertEquals("0,1,0,1,1,0", lines.get(1));
+    }
+
+    @Test
+    public void testStatsHeaderWithManyHoles() throws IOException {
+        Path file = Files.createTempFile("maxwell", ".csv");
+        // desde hole1000 cada nombre ocupa 9 bytes o más
+        for (int i = 0; i < 12_000; i++) {
+            container.addHole(10 + i % 280, 10 + i / 280 % 180, 0);
+        }
+        container.recordStats(file);
+        container.start(1);
+        container.stopStats();
+        assertTrue(container.ok());
+        List<String> lines = Files.readAllLines(file);
+        Files.delete(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("step,particles,hole0,hole1,"));
+        assertTrue(lines.get(0).endsWith(",hole11999,crossings"));
+    }
+
+    @Test
+    public void testStatsStartNewFileWhenColumnsChange() throws IOException {
+        Path file = Files.createTempFile("maxwell", ".csv");
+        Path next = StatsWriter.part(file, 1);
+        container.addParticle(50, 50, "azúl");
+        container.addParticle(80, 50, "rojo, \"vivo\"");
+        container.recordStats(file);
+        container.start(2);
+        container.addHole(250, 150, 1);
+        container.start(1);
+        container.stopStats();
+        assertTrue(container.ok());
+        List<String> first = Files.readAllLines(file, StandardCharsets.UTF_8);
+        List<String> second = Files.readAllLines(next, StandardCharsets.UTF_8);
+        Files.delete(file);
+        Files.delete(next);
+        assertEquals(3, first.size());
+        assertEquals("step,particles,azúl,\"rojo, \"\"vivo\"\"\",crossings", first.get(0));
+        assertEquals(2, second.size());
+        assertTrue(second.get(0).endsWith(",hole0,crossings"));
+        assertTrue(second.get(1).startsWith("2,2,"));
+    }
+
+    @Test
+    public void testStatsKeepRowsWhenInterrupted() throws IOException {
+        Path file = Files.createTempFile("maxwell", ".csv");
+        container.addParticle(50, 50, "blue");
+        container.recordStats(file);
+        // con la marca puesta cada entrega de buffer se interrumpiría
+        Thread.currentThread().interrupt();
+        container.start(20_000);
+        container.stopStats();
+        assertTrue(Thread.interrupted());
+        assertTrue(container.ok());
+        List<String> lines = Files.readAllLines(file);
+        Files.delete(file);
+        assertEquals(20_001, lines.size());
+        assertTrue(lines.get(20_000).startsWith("19999,1,1,"));
+    }
+
+    @Test
+    public void testFramesRespectEachBackpressurePolicy() throws InterruptedException {
+        container.addParticle(10, 10, "blue");
+        List<Long> all = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        // BLOCK: pide todo y no pierde nada
+        container.frames().subscribe(new Flow.Subscriber<Frame>() {
+            public void onSubscribe(Flow.Subscription s) { s.request(Long.MAX_VALUE); }
+            public void onNext(Frame f) { all.add(f.step()); }
+            public void onError(Throwable t) { }
+            public void onComplete() { done.countDown(); }
+        }, FramePublisher.Backpressure.BLOCK);
+        // SAMPLE: no pide nada hasta el final, solo queda el último frame
+        List<Frame> sampled = new ArrayList<>();
+        Flow.Subscription[] slow = new Flow.Subscription[1];
+        container.frames().subscribe(new Flow.Subscriber<Frame>() {
+            public void onSubscribe(Flow.Subscription s) { slow[0] = s; }
+            public void onNext(Frame f) { sampled.add(f); }
+            public void onError(Throwable t) { }
+            public void onComplete() { done.countDown(); }
+        }, FramePublisher.Backpressure.SAMPLE);
+        container.start(50);
+        slow[0].request(10);
+        container.finish();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(50, all.size());
+        assertEquals(Long.valueOf(49), all.get(49));
+        assertEquals(1, sampled.size());
+        assertEquals(49, sampled.get(0).step());
+        assertEquals("blue", sampled.get(0).color(0));
+    }
+
+    @Test
+    public void testShardedRunMatchesSingleProcess() throws Exception {
+        // Agujeros que no se llenan: el resultado no depende del orden
+        container.addHole(100, 100, 1000);
+        container.addHole(220, 60, 1000);
+        Random r = new Random(7);
+        List<Long> handles = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            handles.add(container.addParticle(r.nextInt(290), r.nextInt(190), "red",
+                        r.nextInt(6 * Particle.UNIT) - 3 * Particle.UNIT,
+                        r.nextInt(6 * Particle.UNIT) - 3 * Particle.UNIT));
+        }
+        Path file = Files.createTempFile("maxwell", ".shm");
+        ShardedSimulation sim = container.shard(file, 3);
+        assertTrue(container.ok());
+        List<Thread> threads = new ArrayList<>();
+        List<ShardWorker> workers = new ArrayList<>();
+        for (int k = 0; k < 3; k++) {
+            // cada shard con su propio mapeo, como si fuera otro proceso
+            ShardWorker w = ShardWorker.open(file, k);
+            workers.add(w);
+            Thread t = new Thread(w::run);
+            t.start();
+            threads.add(t);
+        }
+        sim.run(200);
+        for (Thread t : threads) {
+            t.join();
+        }
+        Files.delete(file);
+
+        container.start(200);
+        List<String> expected = new ArrayList<>();
+        for (long h : handles) {
+            Particle p = container.getParticle(h);
+            if (p != null) {
+                expected.add(p.getX() + "," + p.getY() + "," + p.getVelocityX() + "," + p.getVelocityY());
+            }
+        }
+        List<String> actual = new ArrayList<>();
+        for (ShardWorker w : workers) {
+            for (int i = 0; i < w.size(); i++) {
+                actual.add(w.getX(i) + "," + w.getY(i) + "," + w.getVelocityX(i) + "," + w.getVelocityY(i));
+            }
+        }
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), sim.getParticleCount());
+        assertEquals(300 - expected.size(), sim.getHoleFill(0) + sim.getHoleFill(1));
+    }
+
+    @Test
+    public void testShardedRunInWorkerProcessesMergesBack() throws Exception {
+        MaxwellContainer single = new MaxwellContainer();
+        single.create(300, 200);
+        List<Long> handles = new ArrayList<>();
+        List<Long> singleHandles = new ArrayList<>();
+        long[] holes = new long[4];
+        for (MaxwellContainer c : new MaxwellContainer[] {container, single}) {
+            int first = c == container ? 0 : 2;
+            holes[first] = c.addHole(100, 100, 1000);
+            holes[first + 1] = c.addHole(220, 60, 1000);
+            Random r = new Random(9);
+            for (int i = 0; i < 400; i++) {
+                long h = c.addParticle(r.nextInt(290), r.nextInt(190), "red",
+                                       r.nextInt(6 * Particle.UNIT) - 3 * Particle.UNIT,
+                                       r.nextInt(6 * Particle.UNIT) - 3 * Particle.UNIT);
+                (c == container ? handles : singleHandles).add(h);
+            }
+        }
+        Path file = Files.createTempFile("maxwell", ".shm");
+        ShardedSimulation sim = container.shard(file, 2);
+        assertTrue(container.ok());
+        List<Process> workers = sim.launchWorkers();
+        sim.run(150);
+        for (Process w : workers) {
+            assertTrue(w.waitFor(60, TimeUnit.SECONDS));
+            assertEquals(0, w.exitValue());
+        }
+        Files.delete(file);
+        container.merge(sim);
+        assertTrue(container.ok());
+
+        single.start(150);
+        assertEquals(single.getParticleCount(), container.getParticleCount());
+        assertEquals(single.getParticleCount(), sim.getResultCount());
+        for (int i = 0; i < handles.size(); i++) {
+            Particle p = container.getParticle(handles.get(i));
+            Particle q = single.getParticle(singleHandles.get(i));
+            assertEquals(q == null, p == null);
+            if (p != null) {
+                assertEquals(q.getX(), p.getX());
+                assertEquals(q.getY(), p.getY());
+                assertEquals(q.getVelocityX(), p.getVelocityX());
+                assertEquals(q.getVelocityY(), p.getVelocityY());
+            }
+        }
+        for (int h = 0; h < 2; h++) {
+            assertEquals(single.getHole(holes[2 + h]).getFill(), container.getHole(holes[h]).getFill());
+        }
+        assertTrue(container.getHole(holes[0]).getFill() + container.getHole(holes[1]).getFill() > 0);
+        assertEquals(single.consult(), container.consult());
+        assertEquals(single.particlesNear(150, 100, 60).length,
+                     container.particlesNear(150, 100, 60).length);
+        // ya se trajo: otra simulación que no salió de aquí no se acepta
+        single.merge(sim);
+        assertFalse(single.ok());
+    }
+
+    @Test
+    public void testParticlesNearMatchesFullScan() {
+        Random r = new Random(3);
+        List<Long> handles = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            handles.add(container.addParticle(r.nextInt(290), r.nextInt(190), "red",
+                        r.nextInt(8 * Particle.UNIT) - 4 * Particle.UNIT,
+                        r.nextInt(8 * Particle.UNIT) - 4 * Particle.UNIT));
+        }
+        long demon = container.addDemon(150, 100);
+        container.start(50);
+        container.resize(200, 150);
+        container.start(10);
+        long[] near = container.particlesNearDemon(demon, 40);
+        assertTrue(container.ok());
+        int expected = 0;
+        for (long h : handles) {
+            Particle p = container.getParticle(h);
+            long dx = p.getX() - 150, dy = p.getY() - 100;
+            if (dx * dx + dy * dy <= 40 * 40) {
+                expected++;
+            }
+        }
+        assertEquals(expected, near.length);
+        for (long h : near) {
+            Particle p = container.getParticle(h);
+            long dx = p.getX() - 150, dy = p.getY() - 100;
+            assertTrue(dx * dx + dy * dy <= 40 * 40);
+        }
+    }
+
+    @Test
+    public void testSameSeedGivesSameScenario() {
+        String[] colors = {"red", "blue"};
+        container.setSeed(2024);
+        long[] first = container.addRandomParticles(10_000, colors, 2 * Particle.UNIT);
+        long next = container.randomStream(1).nextLong();
+
+        MaxwellContainer other = new MaxwellContainer();
+        other.create(300, 200);
+        other.setSeed(2024);
+        long[] second = other.addRandomParticles(10_000, colors, 2 * Particle.UNIT);
+        assertEquals(next, other.randomStream(1).nextLong());
+        for (int i = 0; i < first.length; i++) {
+            Particle a = container.getParticle(first[i]);
+            Particle b = other.getParticle(second[i]);
+            assertEquals(a.getX(), b.getX());
+            assertEquals(a.getY(), b.getY());
+            assertEquals(a.getVelocityX(), b.getVelocityX());
+            assertEquals(a.getColor(), b.getColor());
+            assertTrue(a.getX() <= 290 && a.getY() <= 190);
+        }
+
+        // en una caja sin lugar para una partícula falla sin lanzar
+        MaxwellContainer tiny = new MaxwellContainer();
+        tiny.create(5, 5);
+        assertNull(tiny.addRandomParticles(10, colors, Particle.UNIT));
+        assertFalse(tiny.ok());
+    }
+
+    @Test
+    public void testScriptCoalescesAndRecordsResults() throws IOException {
+        String script = "# escenario\n"
+                      + "create 300 200\n"
+                      + "particle 50 50 blue\n"
+                      + "particle 60 60 red 256 0\n"
+                      + "hole 30 30 1\n"
+                      + "start 1\n"
+                      + "start 2\n"
+                      + "\n"
+                      + "particle 10 10\n"
+                      + "resize 5 5\n"
+                      + "consult\n";
+        ScriptRunner runner = new ScriptRunner(container);
+        runner.run(new StringReader(script));
+        assertEquals(9, runner.commandCount());
+        assertEquals(2, runner.failureCount());
+        assertTrue(runner.ok(0) && runner.ok(1) && runner.ok(5));
+        assertFalse(runner.ok(6)); // falta el color
+        assertFalse(runner.ok(7)); // dimensiones inválidas
+        assertEquals(1, runner.errors().size());
+        assertEquals(1, runner.output().size());
+        // el agujero consumió la partícula azul en el primer paso
+        assertTrue(runner.output().get(0).contains("Particles: 1"));
+
+        // un "start" negativo es un error y no descuenta pasos del grupo
+        MaxwellContainer other = new MaxwellContainer();
+        other.create(300, 200);
+        ScriptRunner steps = new ScriptRunner(other);
+        steps.run(new StringReader("start 10\nstart -5\nstart 3\n"));
+        assertEquals(3, steps.commandCount());
+        assertTrue(steps.ok(0) && steps.ok(2));
+        assertFalse(steps.ok(1));
+        assertEquals(13, other.getStepsWithoutChange());
+
+        // un "create" con dimensiones negativas falla sin cortar el guion
+        ScriptRunner bad = new ScriptRunner(other);
+        bad.run(new StringReader("create -100 50\ncreate 300 0\nparticle 10 10 red\n"));
+        assertEquals(3, bad.commandCount());
+        assertFalse(bad.ok(0) || bad.ok(1));
+        assertTrue(bad.ok(2));
+    }
+
+    @Test
+    public void testReorderKeepsHandlesAndResults() {
+        MaxwellContainer other = new MaxwellContainer();
+        other.create(300, 200);
+        container.setSeed(11);
+        other.setSeed(11);
+        long[] a = container.addRandomParticles(2000, new String[] {"red", "blue"}, 3 * Particle.UNIT);
+        long[] b = other.addRandomParticles(2000, new String[] {"red", "blue"}, 3 * Particle.UNIT);
+        Particle[] before = new Particle[a.length];
+        for (int i = 0; i < a.length; i++) {
+            before[i] = container.getParticle(a[i]);
+        }
+        container.setReorderInterval(8);
+        assertTrue(container.ok());
+        container.start(100);
+        other.start(100);
+        for (int i = 0; i < a.length; i++) {
+            Particle p = container.getParticle(a[i]);
+            Particle q = other.getParticle(b[i]);
+            assertSame(before[i], p);
+            assertEquals(q.getX(), p.getX());
+            assertEquals(q.getY(), p.getY());
+            assertEquals(q.getVelocityX(), p.getVelocityX());
+        }
+        assertEquals(other.particlesNear(150, 100, 50).length,
+                     container.particlesNear(150, 100, 50).length);
+        // una referencia tomada antes de reordenar sigue sirviendo para borrar
+        container.deleteParticle(before[0]);
+        assertTrue(container.ok());
+        assertNull(container.getParticle(a[0]));
+        assertEquals(a.length - 1, container.particlesNear(150, 100, 1000).length);
+    }
+
+    @Test
+    public void testSortedFractionNeedsSeparatedColors() {
+        // Todos los colores en la cámara izquierda: no hay nada separado
+        container.addParticle(20, 50, "red");
+        container.addParticle(40, 50, "red");
+        container.addParticle(60, 50, "blue");
+        container.addParticle(80, 50, "blue");
+        assertEquals(0.0, container.getSortedFraction(), 1e-9);
+        // La misma mezcla en las dos cámaras tampoco separa nada
+        container.addParticle(220, 50, "red");
+        container.addParticle(240, 50, "blue");
+        assertEquals(0.0, container.getSortedFraction(), 1e-9);
+
+        MaxwellContainer split = new MaxwellContainer();
+        split.create(300, 200);
+        split.addParticle(20, 50, "red");
+        split.addParticle(40, 50, "red");
+        split.addParticle(220, 50, "blue");
+        assertEquals(1.0, split.getSortedFraction(), 1e-9);
+        split.addParticle(60, 50, "blue");
+        double partial = split.getSortedFraction();
+        assertTrue(partial > 0 && partial < 1);
+    }
+}
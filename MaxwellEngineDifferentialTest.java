@@ -0,0 +1,312 @@
+package Maxwell;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Pruebas diferenciales: generan escenarios grandes al azar, los corren
+ * con un paso de referencia escrito de la forma más directa posible y
+ * con cada motor del contenedor, y comparan el estado final.
+ * También imprimen el rendimiento de cada motor, lado a lado.
+ */
+public class MaxwellEngineDifferentialTest {
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final int HOLE_RADIUS = BlackHole.SIZE / 2;
+    private static final String[] COLORS = {"red", "blue", "green"};
+    private static final int SAMPLES = 64;
+
+    @Test
+    public void testEnginesMatchReference() {
+        for (long seed = 1; seed <= 5; seed++) {
+            compareEngines(new Scenario(seed, 20_000, 12), 200);
+        }
+    }
+
+    @Test
+    public void testFastParticlesMatchReference() {
+        // Velocidades de hasta 30 píxeles por paso: rebotes y capturas en un tramo
+        Scenario s = new Scenario(42, 5_000, 8);
+        s.maxSpeed = 30 * Particle.UNIT;
+        s.generate();
+        compareEngines(s, 300);
+    }
+
+    /**
+     * Corre el escenario con la referencia y con cada motor y compara.
+     */
+    private void compareEngines(Scenario s, int steps) {
+        long t0 = System.nanoTime();
+        long[] expected = s.runReference(steps);
+        long reference = System.nanoTime() - t0;
+
+        MaxwellContainer container = s.container();
+        long[] handles = s.addTo(container);
+        t0 = System.nanoTime();
+        container.start(steps);
+        long objects = System.nanoTime() - t0;
+        assertArrayEquals("start, semilla " + s.seed, expected, state(container, handles));
+
+        MaxwellContainer holesOnly = s.container();
+        OffHeapParticleStore store = s.store();
+        t0 = System.nanoTime();
+        holesOnly.start(store, steps);
+        long offHeap = System.nanoTime() - t0;
+        assertArrayEquals("off-heap, semilla " + s.seed, expected, state(store));
+
+        // el camino visible mueve también las figuras del Canvas en cada paso
+        MaxwellContainer visible = s.container();
+        long[] visibleHandles = s.addTo(visible);
+        visible.setStepDelay(0);
+        visible.makeVisible();
+        t0 = System.nanoTime();
+        visible.start(steps);
+        long drawn = System.nanoTime() - t0;
+        assertArrayEquals("visible, semilla " + s.seed, expected, state(visible, visibleHandles));
+
+        long particleSteps = (long) s.count * steps;
+        System.out.printf("semilla %d: %d partículas x %d pasos -> referencia %.1f M/s,"
+                          + " start %.1f M/s, off-heap %.1f M/s, visible %.1f M/s%n",
+                          s.seed, s.count, steps, rate(particleSteps, reference),
+                          rate(particleSteps, objects), rate(particleSteps, offHeap),
+                          rate(particleSteps, drawn));
+        container.finish();
+        holesOnly.finish();
+        visible.finish();
+    }
+
+    private static double rate(long particleSteps, long nanos) {
+        return particleSteps / (nanos / 1e9) / 1e6;
+    }
+
+    /**
+     * Estado de las partículas vivas del contenedor, ordenado.
+     */
+    private static long[] state(MaxwellContainer c, long[] handles) {
+        ArrayList<Long> out = new ArrayList<>();
+        for (long h : handles) {
+            Particle p = c.getParticle(h);
+            if (p != null) {
+                out.add(pack(p.getX(), p.getY(), p.getVelocityX(), p.getVelocityY(),
+                             Arrays.asList(COLORS).indexOf(p.getColor())));
+            }
+        }
+        return sorted(out);
+    }
+
+    /**
+     * Estado de las partículas del almacén fuera del heap, ordenado.
+     */
+    private static long[] state(OffHeapParticleStore store) {
+        ArrayList<Long> out = new ArrayList<>();
+        for (long i = 0; i < store.size(); i++) {
+            out.add(pack(store.getX(i), store.getY(i), store.getVelocityX(i),
+                         store.getVelocityY(i), store.getColor(i)));
+        }
+        return sorted(out);
+    }
+
+    private static long[] sorted(ArrayList<Long> values) {
+        long[] a = new long[values.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = values.get(i);
+        }
+        Arrays.sort(a);
+        return a;
+    }
+
+    /**
+     * Junta el estado de una partícula en un long: 12 bits por
+     * coordenada, 16 por componente de velocidad y 4 para el color.
+     */
+    private static long pack(int x, int y, int vx, int vy, int color) {
+        return (long) x << 52 | (long) y << 40 | (long) (vx & 0xFFFF) << 24
+             | (long) (vy & 0xFFFF) << 8 | color;
+    }
+
+    /**
+     * Escenario al azar: partículas con posición, velocidad y color, y
+     * agujeros separados entre sí para que ningún tramo toque dos: así el
+     * orden en que se revisan los agujeros no cambia el resultado.
+     */
+    private static class Scenario {
+        final long seed;
+        final int count;
+        final int holeCount;
+        int maxSpeed = 4 * Particle.UNIT;
+        int[] xs, ys, vxs, vys, colors;
+        int[] holeXs, holeYs, holeCapacity;
+
+        Scenario(long seed, int count, int holeCount) {
+            this.seed = seed;
+            this.count = count;
+            this.holeCount = holeCount;
+            generate();
+        }
+
+        void generate() {
+            Random r = new Random(seed);
+            xs = new int[count];
+            ys = new int[count];
+            vxs = new int[count];
+            vys = new int[count];
+            colors = new int[count];
+            for (int i = 0; i < count; i++) {
+                xs[i] = r.nextInt(WIDTH - 10);
+                ys[i] = r.nextInt(HEIGHT - 10);
+                vxs[i] = r.nextInt(2 * maxSpeed + 1) - maxSpeed;
+                vys[i] = r.nextInt(2 * maxSpeed + 1) - maxSpeed;
+                colors[i] = r.nextInt(COLORS.length);
+            }
+            // un tramo mide a lo sumo maxSpeed·√2 más un píxel de redondeo
+            // por eje; dos centros a más de eso más dos radios no pueden
+            // quedar a menos de un radio del mismo tramo
+            int reach = (int) Math.ceil(maxSpeed * Math.sqrt(2) / Particle.UNIT) + 2;
+            int spacing = reach + 2 * HOLE_RADIUS + 1;
+            // rejilla de celdas, un agujero por celda que se corre a lo
+            // sumo 'jitter' de su centro
+            int cell = Math.max(200, spacing);
+            int jitter = (cell - spacing) / 2;
+            int cols = WIDTH / cell;
+            if (holeCount > cols * (HEIGHT / cell)) {
+                throw new IllegalArgumentException("No entran " + holeCount + " agujeros separados");
+            }
+            holeXs = new int[holeCount];
+            holeYs = new int[holeCount];
+            holeCapacity = new int[holeCount];
+            for (int i = 0; i < holeCount; i++) {
+                holeXs[i] = (i % cols) * cell + cell / 2 + r.nextInt(2 * jitter + 1) - jitter;
+                holeYs[i] = (i / cols) * cell + cell / 2 + r.nextInt(2 * jitter + 1) - jitter;
+                holeCapacity[i] = r.nextInt(count / holeCount);
+            }
+        }
+
+        MaxwellContainer container() {
+            MaxwellContainer c = new MaxwellContainer();
+            c.create(WIDTH, HEIGHT);
+            for (int i = 0; i < holeCount; i++) {
+                c.addHole(holeXs[i], holeYs[i], holeCapacity[i]);
+            }
+            return c;
+        }
+
+        long[] addTo(MaxwellContainer c) {
+            long[] handles = new long[count];
+            for (int i = 0; i < count; i++) {
+                handles[i] = c.addParticle(xs[i], ys[i], COLORS[colors[i]], vxs[i], vys[i]);
+            }
+            return handles;
+        }
+
+        OffHeapParticleStore store() {
+            OffHeapParticleStore store = OffHeapParticleStore.allocate(count);
+            for (int i = 0; i < count; i++) {
+                store.add(xs[i], ys[i], vxs[i], vys[i], colors[i]);
+            }
+            return store;
+        }
+
+        /**
+         * Paso de referencia: las reglas de Particle.move y de la
+         * captura de agujeros, escritas sin ninguna optimización.
+         * Las partículas consumidas se reemplazan por la última, en el
+         * mismo orden que usa el contenedor.
+         */
+        long[] runReference(int steps) {
+            ArrayList<int[]> ps = new ArrayList<>(); // fx, fy, vx, vy, color
+            for (int i = 0; i < count; i++) {
+                ps.add(new int[] {xs[i] << Particle.SHIFT, ys[i] << Particle.SHIFT,
+                                  vxs[i], vys[i], colors[i]});
+            }
+            int[] capacity = holeCapacity.clone();
+            int limitX = (WIDTH - 10) << Particle.SHIFT;
+            int limitY = (HEIGHT - 10) << Particle.SHIFT;
+            for (int s = 0; s < steps; s++) {
+                int j = 0;
+                while (j < ps.size()) {
+                    int[] p = ps.get(j);
+                    int x0 = p[0] >> Particle.SHIFT;
+                    int y0 = p[1] >> Particle.SHIFT;
+                    p[0] += p[2];
+                    p[1] += p[3];
+                    if (p[0] < 0) { p[0] = -p[0]; p[2] = -p[2]; }
+                    else if (p[0] > limitX) { p[0] = 2 * limitX - p[0]; p[2] = -p[2]; }
+                    if (p[1] < 0) { p[1] = -p[1]; p[3] = -p[3]; }
+                    else if (p[1] > limitY) { p[1] = 2 * limitY - p[1]; p[3] = -p[3]; }
+                    p[0] = Math.max(0, Math.min(p[0], limitX));
+                    p[1] = Math.max(0, Math.min(p[1], limitY));
+                    int x1 = p[0] >> Particle.SHIFT;
+                    int y1 = p[1] >> Particle.SHIFT;
+                    boolean captured = false;
+                    for (int h = 0; h < holeCount && !captured; h++) {
+                        // el círculo del agujero empieza en (holeX, holeY)
+                        if (capacity[h] > 0 && captures(x0, y0, x1, y1, holeXs[h] + HOLE_RADIUS,
+                                                        holeYs[h] + HOLE_RADIUS, HOLE_RADIUS)) {
+                            capacity[h]--;
+                            captured = true;
+                        }
+                    }
+                    if (captured) {
+                        ps.set(j, ps.get(ps.size() - 1));
+                        ps.remove(ps.size() - 1);
+                    } else {
+                        j++;
+                    }
+                }
+            }
+            ArrayList<Long> out = new ArrayList<>();
+            for (int[] p : ps) {
+                out.add(pack(p[0] >> Particle.SHIFT, p[1] >> Particle.SHIFT, p[2], p[3], p[4]));
+            }
+            return sorted(out);
+        }
+
+        /**
+         * Captura de la referencia: la prueba del checkHoles original
+         * (distancia en double menor que el radio) hecha en SAMPLES
+         * puntos del tramo en lugar de solo en su final. Entre dos
+         * muestras la distancia real puede ser menor a lo sumo en medio
+         * paso de muestreo; si el mínimo muestreado cae en esa franja
+         * sobre el radio se decide con la distancia exacta a la recta.
+         */
+        static boolean captures(int x0, int y0, int x1, int y1, int hx, int hy, int r) {
+            if (Math.max(x0, x1) + r <= hx || Math.min(x0, x1) - r >= hx
+                || Math.max(y0, y1) + r <= hy || Math.min(y0, y1) - r >= hy) {
+                return false;
+            }
+            double min = Double.MAX_VALUE;
+            for (int k = 0; k <= SAMPLES; k++) {
+                double t = (double) k / SAMPLES;
+                min = Math.min(min, Math.hypot(x0 + t * (x1 - x0) - hx, y0 + t * (y1 - y0) - hy));
+            }
+            if (min < r) {
+                return true;
+            }
+            double halfStep = Math.hypot(x1 - x0, y1 - y0) / SAMPLES / 2;
+            if (min >= r + halfStep + 1e-9) {
+                return false;
+            }
+            return exactlyCaptures(x0, y0, x1, y1, hx, hy, r);
+        }
+
+        /**
+         * Caso dudoso: el punto más cercano está en el interior del tramo,
+         * y su distancia a la recta es |a × d| / |d|.
+         */
+        private static boolean exactlyCaptures(int x0, int y0, int x1, int y1, int hx, int hy, int r) {
+            long dx = x1 - x0, dy = y1 - y0;
+            long ax = hx - x0, ay = hy - y0;
+            long bx = hx - x1, by = hy - y1;
+            long r2 = (long) r * r;
+            if (ax * ax + ay * ay < r2 || bx * bx + by * by < r2) {
+                return true;
+            }
+            boolean inside = ax * dx + ay * dy > 0 && bx * dx + by * dy < 0;
+            long cross = ax * dy - ay * dx;
+            return inside && cross * cross < r2 * (dx * dx + dy * dy);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package Maxwell;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Métricas del ciclo de simulación de un {@link MaxwellContainer}.
+ * Los contadores son LongAdder (repartidos por hilo), así que registrar
+ * un paso no toma ningún bloqueo; solo la lectura de tasas sincroniza.
+ */
+public class MaxwellMetrics implements MaxwellMetricsMBean {
+    private static final int BUCKETS = 40; // hasta ~2^40 ns, unos 18 minutos
+    private static final long RATE_WINDOW = 1_000_000_000L;
+
+    private final IntSupplier particleCount;
+    private final LongAdder steps;
+    private final LongAdder particleSteps;
+    private final LongAdder consumptions;
+    private final LongAdder canvasMutations;
+    private final LongAdder[] latency;
+    private volatile long lastFrameMutations;
+
+    // último muestreo de tasas, protegido por this
+    private long sampleTime;
+    private long sampleSteps;
+    private long sampleParticleSteps;
+    private double stepsPerSecond;
+    private double particleStepsPerSecond;
+
+    /**
+     * Crea las métricas de un contenedor.
+     * @param particleCount fuente del número actual de partículas
+     */
+    MaxwellMetrics(IntSupplier particleCount) {
+        this.particleCount = particleCount;
+        steps = new LongAdder();
+        particleSteps = new LongAdder();
+        consumptions = new LongAdder();
+        canvasMutations = new LongAdder();
+        latency = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            latency[i] = new LongAdder();
+        }
+        sampleTime = System.nanoTime();
+    }
+
+    /**
+     * Registra un paso completo de la simulación.
+     * @param nanos duración del paso
+     * @param movedParticles partículas movidas en el paso
+     * @param mutations cambios enviados al canvas en el paso
+     */
+    void recordStep(long nanos, long movedParticles, long mutations) {
+        steps.increment();
+        particleSteps.add(movedParticles);
+        int bucket = 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+        latency[Math.min(bucket, BUCKETS - 1)].increment();
+        if (mutations > 0) {
+            canvasMutations.add(mutations);
+        }
+        lastFrameMutations = mutations;
+    }
+
+    /**
+     * Registra que un agujero negro consumió una partícula.
+     */
+    void recordConsumption() {
+        consumptions.increment();
+    }
+
+    /**
+     * Registra varias partículas consumidas de una vez.
+     * @param count partículas consumidas
+     */
+    void recordConsumptions(int count) {
+        if (count > 0) {
+            consumptions.add(count);
+        }
+    }
+
+    @Override
+    public synchronized double getStepsPerSecond() {
+        refreshRates();
+        return stepsPerSecond;
+    }
+
+    @Override
+    public synchronized double getParticleStepsPerSecond() {
+        refreshRates();
+        return particleStepsPerSecond;
+    }
+
+    @Override
+    public long getTotalSteps() {
+        return steps.sum();
+    }
+
+    @Override
+    public long getHoleConsumptions() {
+        return consumptions.sum();
+    }
+
+    @Override
+    public long getCanvasMutationsLastFrame() {
+        return lastFrameMutations;
+    }
+
+    @Override
+    public long getCanvasMutations() {
+        return canvasMutations.sum();
+    }
+
+    @Override
+    public int getParticleCount() {
+        return particleCount.getAsInt();
+    }
+
+    @Override
+    public long[] getStepLatencyHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latency[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized void reset() {
+        steps.reset();
+        particleSteps.reset();
+        consumptions.reset();
+        canvasMutations.reset();
+        for (LongAdder bucket : latency) {
+            bucket.reset();
+        }
+        lastFrameMutations = 0;
+        sampleTime = System.nanoTime();
+        sampleSteps = 0;
+        sampleParticleSteps = 0;
+        stepsPerSecond = 0;
+        particleStepsPerSecond = 0;
+    }
+
+    /**
+     * Recalcula las tasas si pasó al menos un segundo desde el último muestreo.
+     */
+    private void refreshRates() {
+        long now = System.nanoTime();
+        long elapsed = now - sampleTime;
+        if (elapsed < RATE_WINDOW) {
+            return;
+        }
+        long s = steps.sum();
+        long ps = particleSteps.sum();
+        double seconds = elapsed / 1e9;
+        stepsPerSecond = (s - sampleSteps) / seconds;
+        particleStepsPerSecond = (ps - sampleParticleSteps) / seconds;
+        sampleTime = now;
+        sampleSteps = s;
+        sampleParticleSteps = ps;
+    }
+}
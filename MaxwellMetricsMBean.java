@@ -0,0 +1,38 @@
+package Maxwell;
+
+/**
+ * Interfaz JMX de las métricas de un {@link MaxwellContainer}.
+ * Las tasas se recalculan como mucho una vez por segundo al leerlas.
+ */
+public interface MaxwellMetricsMBean {
+    /** @return pasos de simulación por segundo */
+    double getStepsPerSecond();
+
+    /** @return pasos de partícula (partículas movidas) por segundo */
+    double getParticleStepsPerSecond();
+
+    /** @return pasos totales desde que se creó el contenedor */
+    long getTotalSteps();
+
+    /** @return partículas consumidas por agujeros negros */
+    long getHoleConsumptions();
+
+    /** @return cambios enviados al canvas en el último cuadro */
+    long getCanvasMutationsLastFrame();
+
+    /** @return cambios enviados al canvas en total */
+    long getCanvasMutations();
+
+    /** @return número actual de partículas */
+    int getParticleCount();
+
+    /**
+     * Histograma de latencia de un paso de {@code start}.
+     * La posición i cuenta los pasos que tardaron entre 2^i y 2^(i+1) ns.
+     * @return cuentas por cubeta
+     */
+    long[] getStepLatencyHistogram();
+
+    /** Reinicia todos los contadores. */
+    void reset();
+}
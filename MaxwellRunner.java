@@ -1,7 +1,11 @@
 package Maxwell;
 
+import java.nio.file.Paths;
+
 /**
  * Clase principal para ejecutar la simulación de Maxwell's Demon.
+ * Si se pasa un archivo como argumento, se guardan ahí las estadísticas
+ * de cada paso en CSV.
  */
 public class MaxwellRunner {
     public static void main(String[] args) {
@@ -24,8 +28,14 @@ public class MaxwellRunner {
         // Agregamos un agujero negro (opcional)
         container.addHole(200, 150, 2);
 
+        // Estadísticas por paso (opcional)
+        if (args.length > 0) {
+            container.recordStats(Paths.get(args[0]));
+        }
+
         // Movemos las partículas 200 pasos
         container.start(200);
+        container.stopStats();
 
         // Mostramos en consola el estado final
         System.out.println(container.consult());
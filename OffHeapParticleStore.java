@@ -0,0 +1,261 @@
+package Maxwell;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Almacén de partículas fuera del heap de Java, para contenedores con
+ * cientos de millones de partículas. Cada partícula es un registro de
+ * 24 bytes (posición y velocidad en el mismo punto fijo que
+ * {@link Particle}, más un índice de color) dentro de buffers directos,
+ * así que el recolector de basura no los recorre.
+ *
+ * El almacén puede vivir en memoria ({@link #allocate(long)}) o mapeado
+ * a un archivo ({@link #map(Path, long)}); en ese caso el archivo es
+ * directamente una instantánea que se puede volver a abrir.
+ *
+ * Las partículas no tienen representación gráfica: se avanzan con
+ * {@link MaxwellContainer#start(OffHeapParticleStore, int)}.
+ */
+public final class OffHeapParticleStore {
+    private static final int MAGIC = 0x4D58504C; // "MXPL"
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_BYTES = 24;
+    private static final int FX = 0, FY = 4, VX = 8, VY = 12, COLOR = 16;
+    // partículas por buffer: un buffer se indexa con int
+    private static final int CHUNK_SHIFT = 25;
+    private static final int CHUNK_PARTICLES = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_PARTICLES - 1;
+
+    private final ByteBuffer header;
+    private final ByteBuffer[] chunks;
+    private final long capacity;
+    private long size;
+
+    private OffHeapParticleStore(ByteBuffer header, ByteBuffer[] chunks, long capacity) {
+        this.header = header.order(ByteOrder.LITTLE_ENDIAN);
+        this.chunks = chunks;
+        for (ByteBuffer chunk : chunks) {
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.capacity = capacity;
+        if (this.header.getInt(0) == MAGIC) {
+            size = this.header.getLong(8);
+        } else {
+            this.header.putInt(0, MAGIC);
+            this.header.putLong(8, 0);
+            this.header.putLong(16, capacity);
+        }
+    }
+
+    /**
+     * Crea un almacén vacío en memoria directa.
+     * @param capacity número máximo de partículas
+     * @return el almacén
+     */
+    public static OffHeapParticleStore allocate(long capacity) {
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(capacity)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkBytes(capacity, i));
+        }
+        return new OffHeapParticleStore(ByteBuffer.allocateDirect(HEADER_BYTES), chunks, capacity);
+    }
+
+    /**
+     * Abre o crea un almacén mapeado al archivo dado. Si el archivo ya
+     * contiene un almacén, se recuperan sus partículas.
+     * @param file archivo de respaldo
+     * @param capacity número máximo de partículas
+     * @return el almacén
+     * @throws IOException si no se puede abrir o mapear el archivo
+     */
+    public static OffHeapParticleStore map(Path file, long capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            ByteBuffer[] chunks = new ByteBuffer[chunkCount(capacity)];
+            long offset = HEADER_BYTES;
+            for (int i = 0; i < chunks.length; i++) {
+                int bytes = chunkBytes(capacity, i);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, bytes);
+                offset += bytes;
+            }
+            OffHeapParticleStore store = new OffHeapParticleStore(header, chunks, capacity);
+            if (store.size > capacity) {
+                throw new IOException("El archivo tiene " + store.size
+                                      + " partículas y la capacidad es " + capacity);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Agrega una partícula.
+     * @param x coord X en píxeles
+     * @param y coord Y en píxeles
+     * @param vx velocidad horizontal en 1/UNIT de píxel por paso
+     * @param vy velocidad vertical en 1/UNIT de píxel por paso
+     * @param color índice de color elegido por quien llama
+     * @return false si el almacén estaba lleno
+     */
+    public boolean add(int x, int y, int vx, int vy, int color) {
+        if (size == capacity) {
+            return false;
+        }
+        ByteBuffer chunk = chunks[(int) (size >>> CHUNK_SHIFT)];
+        int at = offset(size);
+        chunk.putInt(at + FX, x << Particle.SHIFT);
+        chunk.putInt(at + FY, y << Particle.SHIFT);
+        chunk.putInt(at + VX, vx);
+        chunk.putInt(at + VY, vy);
+        chunk.putInt(at + COLOR, color);
+        setSize(size + 1);
+        return true;
+    }
+
+    /** @return número de partículas */
+    public long size() {
+        return size;
+    }
+
+    /** @return número máximo de partículas */
+    public long capacity() {
+        return capacity;
+    }
+
+    /** @return coordenada X en píxeles de la partícula i */
+    public int getX(long i) {
+        return read(i, FX) >> Particle.SHIFT;
+    }
+
+    /** @return coordenada Y en píxeles de la partícula i */
+    public int getY(long i) {
+        return read(i, FY) >> Particle.SHIFT;
+    }
+
+    /** @return velocidad horizontal de la partícula i */
+    public int getVelocityX(long i) {
+        return read(i, VX);
+    }
+
+    /** @return velocidad vertical de la partícula i */
+    public int getVelocityY(long i) {
+        return read(i, VY);
+    }
+
+    /** @return índice de color de la partícula i */
+    public int getColor(long i) {
+        return read(i, COLOR);
+    }
+
+    /**
+     * Escribe en disco los cambios, si el almacén está mapeado a un archivo.
+     */
+    public void force() {
+        if (header instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) header).force();
+            for (ByteBuffer chunk : chunks) {
+                ((MappedByteBuffer) chunk).force();
+            }
+        }
+    }
+
+    /**
+     * Avanza un paso todas las partículas, con las mismas reglas que
+     * {@link Particle#move(int, int)} para las paredes y que el
+     * contenedor para los agujeros. Las partículas consumidas se
+     * reemplazan por la última, así que el orden no se conserva.
+     * @param maxX mayor coordenada X permitida, en píxeles
+     * @param maxY mayor coordenada Y permitida, en píxeles
+     * @param holes agujeros con capacidad
+     * @return partículas consumidas en el paso
+     */
+    int step(int maxX, int maxY, HoleIndex holes) {
+        int limitX = maxX << Particle.SHIFT;
+        int limitY = maxY << Particle.SHIFT;
+        boolean checkHoles = holes.size() > 0;
+        int consumed = 0;
+        long i = 0;
+        while (i < size) {
+            ByteBuffer chunk = chunks[(int) (i >>> CHUNK_SHIFT)];
+            int at = offset(i);
+            int fx = chunk.getInt(at + FX);
+            int fy = chunk.getInt(at + FY);
+            int vx = chunk.getInt(at + VX);
+            int vy = chunk.getInt(at + VY);
+            int x0 = fx >> Particle.SHIFT;
+            int y0 = fy >> Particle.SHIFT;
+            fx += vx;
+            fy += vy;
+            if (fx < 0 || fx > limitX) {
+                fx = fx < 0 ? -fx : 2 * limitX - fx;
+                vx = -vx;
+            }
+            if (fy < 0 || fy > limitY) {
+                fy = fy < 0 ? -fy : 2 * limitY - fy;
+                vy = -vy;
+            }
+            fx = Math.max(0, Math.min(fx, limitX));
+            fy = Math.max(0, Math.min(fy, limitY));
+            if (checkHoles && holes.capture(x0, y0, fx >> Particle.SHIFT, fy >> Particle.SHIFT) != null) {
+                removeAt(i);
+                consumed++;
+                checkHoles = holes.size() > 0;
+                continue; // la última partícula ocupa ahora la posición i
+            }
+            chunk.putInt(at + FX, fx);
+            chunk.putInt(at + FY, fy);
+            chunk.putInt(at + VX, vx);
+            chunk.putInt(at + VY, vy);
+            i++;
+        }
+        return consumed;
+    }
+
+    /**
+     * Quita la partícula i copiando la última en su lugar.
+     */
+    private void removeAt(long i) {
+        long last = size - 1;
+        if (i != last) {
+            ByteBuffer from = chunks[(int) (last >>> CHUNK_SHIFT)];
+            ByteBuffer to = chunks[(int) (i >>> CHUNK_SHIFT)];
+            int src = offset(last);
+            int dst = offset(i);
+            for (int k = 0; k < RECORD_BYTES; k += 4) {
+                to.putInt(dst + k, from.getInt(src + k));
+            }
+        }
+        setSize(last);
+    }
+
+    private int read(long i, int field) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Partícula " + i + " de " + size);
+        }
+        return chunks[(int) (i >>> CHUNK_SHIFT)].getInt(offset(i) + field);
+    }
+
+    private void setSize(long newSize) {
+        size = newSize;
+        header.putLong(8, newSize);
+    }
+
+    private static int offset(long i) {
+        return ((int) i & CHUNK_MASK) * RECORD_BYTES;
+    }
+
+    private static int chunkCount(long capacity) {
+        return (int) ((capacity + CHUNK_PARTICLES - 1) >>> CHUNK_SHIFT);
+    }
+
+    private static int chunkBytes(long capacity, int chunk) {
+        long first = (long) chunk << CHUNK_SHIFT;
+        return (int) Math.min(CHUNK_PARTICLES, capacity - first) * RECORD_BYTES;
+    }
+}
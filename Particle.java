@@ -4,63 +4,174 @@ import shapes.Circle;
 
 /**
  * Representa una partícula que usa un Circle
- * del paquete shapes para su representación.
+ * del paquete shapes para su representación. El círculo se crea la
+ * primera vez que la partícula se hace visible, así una simulación que
+ * nunca se muestra no carga AWT.
+ *
+ * Posición y velocidad se guardan en punto fijo: enteros en unidades de
+ * 1/{@link #UNIT} de píxel, así se tiene precisión de subpíxel sin usar
+ * double en el ciclo de pasos.
  */
 public class Particle {
-    private Circle shape;
-    private int x, y;
-    private int dx, dy;    // direcciones
+    /** Bits fraccionarios de posición y velocidad. */
+    static final int SHIFT = 8;
+    /** Un píxel en punto fijo; una velocidad de UNIT avanza 1 píxel por paso. */
+    public static final int UNIT = 1 << SHIFT;
+
+    /** Bit que devuelve {@link #move(int, int)} al rebotar en una pared vertical. */
+    static final int BOUNCE_X = 1;
+    /** Bit que devuelve {@link #move(int, int)} al rebotar en una pared horizontal. */
+    static final int BOUNCE_Y = 2;
+
+    private Circle shape;       // null hasta la primera vez que se muestra
+    private int fx, fy;         // posición en punto fijo
+    private int vx, vy;         // velocidad en punto fijo por paso
+    private int prevX, prevY;   // posición en píxeles antes del último paso
     private String colorBase;
+    int colorIndex;             // índice del color en la paleta del contenedor
+    long handle;                // handle en el contenedor, 0 si no está en uno
 
     /**
      * Crea una partícula en (x,y) con color base dado,
      * y la hace visible si el contenedor está visible.
+     * Avanza un píxel por paso en cada eje.
      */
     public Particle(int x, int y, String colorBase, boolean visible) {
-        this.x = x;
-        this.y = y;
-        this.dx = 1;
-        this.dy = 1;
-        this.colorBase = colorBase;
+        this(x, y, colorBase, UNIT, UNIT, visible);
+    }
 
-        shape = new Circle();
-        shape.changeColor(colorBase);
-        shape.moveHorizontal(x);
-        shape.moveVertical(y);
+    /**
+     * Crea una partícula en (x,y) con color base y velocidad dados,
+     * y la hace visible si el contenedor está visible.
+     * @param vx velocidad horizontal en 1/UNIT de píxel por paso
+     * @param vy velocidad vertical en 1/UNIT de píxel por paso
+     */
+    public Particle(int x, int y, String colorBase, int vx, int vy, boolean visible) {
+        this.fx = x << SHIFT;
+        this.fy = y << SHIFT;
+        this.vx = vx;
+        this.vy = vy;
+        this.prevX = x;
+        this.prevY = y;
+        this.colorBase = colorBase;
 
         if (visible) {
-            shape.makeVisible();
+            makeVisible();
         }
     }
 
     /**
-     * Mueve la partícula según dx, dy.
+     * Mueve la partícula según su velocidad, sin paredes.
      */
     public void move() {
-        x += dx;
-        y += dy;
-        shape.moveHorizontal(dx);
-        shape.moveVertical(dy);
+        prevX = getX();
+        prevY = getY();
+        fx += vx;
+        fy += vy;
+        updateShape();
+    }
+
+    /**
+     * Mueve la partícula según su velocidad y la refleja en las paredes
+     * x = 0, x = maxX, y = 0, y = maxY. La parte del paso que cruzó la
+     * pared se devuelve hacia adentro, así que una partícula rápida no
+     * queda fuera de la caja aunque avance varios píxeles por paso.
+     * @param maxX mayor coordenada X permitida, en píxeles
+     * @param maxY mayor coordenada Y permitida, en píxeles
+     * @return combinación de BOUNCE_X y BOUNCE_Y según las paredes tocadas
+     */
+    int move(int maxX, int maxY) {
+        prevX = fx >> SHIFT;
+        prevY = fy >> SHIFT;
+        fx += vx;
+        fy += vy;
+        int bounced = 0;
+        int limitX = maxX << SHIFT;
+        int limitY = maxY << SHIFT;
+        if (fx < 0 || fx > limitX) {
+            fx = fx < 0 ? -fx : 2 * limitX - fx;
+            vx = -vx;
+            bounced = BOUNCE_X;
+        }
+        if (fy < 0 || fy > limitY) {
+            fy = fy < 0 ? -fy : 2 * limitY - fy;
+            vy = -vy;
+            bounced |= BOUNCE_Y;
+        }
+        // más rápida que la caja entera: se queda pegada a la pared
+        fx = Math.max(0, Math.min(fx, limitX));
+        fy = Math.max(0, Math.min(fy, limitY));
+        updateShape();
+        return bounced;
+    }
+
+    /**
+     * Devuelve la partícula al rectángulo [0, maxX] x [0, maxY] sin
+     * avanzarla, reflejando la parte que quedó afuera como en
+     * {@link #move(int, int)}. Sirve cuando la caja se achica.
+     * @param maxX mayor coordenada X permitida, en píxeles
+     * @param maxY mayor coordenada Y permitida, en píxeles
+     */
+    void constrain(int maxX, int maxY) {
+        prevX = fx >> SHIFT;
+        prevY = fy >> SHIFT;
+        int limitX = maxX << SHIFT;
+        int limitY = maxY << SHIFT;
+        if (fx > limitX) {
+            fx = 2 * limitX - fx;
+            vx = -Math.abs(vx);
+        }
+        if (fy > limitY) {
+            fy = 2 * limitY - fy;
+            vy = -Math.abs(vy);
+        }
+        fx = Math.max(0, Math.min(fx, limitX));
+        fy = Math.max(0, Math.min(fy, limitY));
+        updateShape();
+    }
+
+    /**
+     * Lleva la partícula a una posición y velocidad calculadas en otro
+     * lado, como si hubiera llegado ahí en un paso.
+     * @param newFx coordenada X en punto fijo
+     * @param newFy coordenada Y en punto fijo
+     * @param newVx velocidad horizontal
+     * @param newVy velocidad vertical
+     */
+    void place(int newFx, int newFy, int newVx, int newVy) {
+        prevX = fx >> SHIFT;
+        prevY = fy >> SHIFT;
+        fx = newFx;
+        fy = newFy;
+        vx = newVx;
+        vy = newVy;
+        updateShape();
     }
 
     /**
      * Invierte la dirección horizontal.
      */
     public void reverseX() {
-        dx = -dx;
+        vx = -vx;
     }
 
     /**
      * Invierte la dirección vertical.
      */
     public void reverseY() {
-        dy = -dy;
+        vy = -vy;
     }
 
     /**
      * Hace visible la partícula.
      */
     public void makeVisible() {
+        if (shape == null) {
+            shape = new Circle();
+            shape.changeColor(colorBase);
+            shape.moveHorizontal(getX());
+            shape.moveVertical(getY());
+        }
         shape.makeVisible();
     }
 
@@ -68,20 +179,90 @@ public class Particle {
      * Hace invisible la partícula.
      */
     public void makeInvisible() {
-        shape.makeInvisible();
+        if (shape != null) {
+            shape.makeInvisible();
+        }
     }
 
     /**
      * @return coordenada X actual
      */
     public int getX() {
-        return x;
+        return fx >> SHIFT;
     }
 
     /**
      * @return coordenada Y actual
      */
     public int getY() {
-        return y;
+        return fy >> SHIFT;
+    }
+
+    /**
+     * @return coordenada X antes del último paso
+     */
+    public int getPreviousX() {
+        return prevX;
+    }
+
+    /**
+     * @return coordenada Y antes del último paso
+     */
+    public int getPreviousY() {
+        return prevY;
+    }
+
+    /** @return coordenada X en punto fijo */
+    int getFixedX() {
+        return fx;
+    }
+
+    /** @return coordenada Y en punto fijo */
+    int getFixedY() {
+        return fy;
+    }
+
+    /**
+     * @return velocidad horizontal en 1/UNIT de píxel por paso
+     */
+    public int getVelocityX() {
+        return vx;
+    }
+
+    /**
+     * @return velocidad vertical en 1/UNIT de píxel por paso
+     */
+    public int getVelocityY() {
+        return vy;
+    }
+
+    /**
+     * Energía cinética sin la masa ni el 1/2 (vx² + vy²), en unidades
+     * de punto fijo al cuadrado. Es la "temperatura" de la partícula.
+     * @return energía cinética
+     */
+    public long getKineticEnergy() {
+        return (long) vx * vx + (long) vy * vy;
+    }
+
+    /**
+     * @return color base de la partícula
+     */
+    public String getColor() {
+        return colorBase;
+    }
+
+    /**
+     * Lleva el círculo a la posición actual en píxeles, si ya existe.
+     */
+    private void updateShape() {
+        if (shape == null) {
+            return;
+        }
+        int x = fx >> SHIFT;
+        int y = fy >> SHIFT;
+        if (x != prevX || y != prevY) {
+            shape.moveBy(x - prevX, y - prevY);
+        }
     }
 }
@@ -0,0 +1,36 @@
+package Maxwell;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Familia de generadores independientes derivados de uno solo. El
+ * generador i es siempre el i-ésimo split de la raíz, sin importar en
+ * qué orden se pidan, así que con la misma semilla cada trozo de trabajo
+ * recibe los mismos números aunque se reparta entre otros hilos.
+ *
+ * Cada generador es de un solo dueño: SplittableRandom no es seguro
+ * entre hilos, y de eso se trata, ninguno se comparte.
+ */
+class RandomStreams {
+    private final SplittableRandom root;
+    private final ArrayList<SplittableRandom> streams;
+
+    RandomStreams(SplittableRandom root) {
+        this.root = root;
+        streams = new ArrayList<>();
+    }
+
+    /**
+     * @return generador número i; siempre el mismo objeto para el mismo i
+     */
+    synchronized SplittableRandom stream(int i) {
+        if (i < 0) {
+            throw new IndexOutOfBoundsException("Generador " + i);
+        }
+        while (streams.size() <= i) {
+            streams.add(root.split());
+        }
+        return streams.get(i);
+    }
+}
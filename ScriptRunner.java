@@ -0,0 +1,371 @@
+package Maxwell;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Ejecuta guiones de comandos sobre un contenedor. Cada línea es un
+ * comando con sus argumentos separados por espacios; las líneas vacías
+ * y las que empiezan con '#' se ignoran:
+ * <pre>
+ * create 400 300
+ * seed 42
+ * demon 200 100
+ * particle 70 70 blue          (velocidad por defecto)
+ * particle 90 40 red 384 -128  (vx vy en 1/UNIT de píxel por paso)
+ * hole 200 150 2
+ * start 200
+ * resize 500 400
+ * visible | invisible
+ * consult
+ * finish
+ * </pre>
+ * El guion se lee línea por línea, sin cargarlo entero. Los "particle"
+ * seguidos se agregan juntos con una sola inserción y los "start"
+ * seguidos se ejecutan como uno solo con la suma de los pasos. El
+ * resultado de ok() de cada comando queda en un buffer de bits, en el
+ * orden de los comandos; un comando mal escrito cuenta como fallido y
+ * el guion sigue.
+ */
+public final class ScriptRunner {
+    private static final int BULK = 4096;  // partículas por inserción
+    private static final int MAX_ERRORS = 100;
+
+    private final MaxwellContainer container;
+    private final BitSet results;
+    private final List<String> output;
+    private final List<String> errors;
+    private final HashMap<String, String> colorNames; // un solo String por color
+    private int commands;
+    private int failures;
+
+    // comandos pendientes de ejecutar
+    private int pendingFirst;        // primer comando del grupo pendiente
+    private int pendingParticles;
+    private int[] xs, ys, vxs, vys;
+    private String[] colors;
+    private long pendingSteps;
+    private boolean stepsPending;
+
+    // línea actual
+    private String line;
+    private int pos;
+
+    /**
+     * @param container contenedor sobre el que se ejecutan los comandos
+     */
+    public ScriptRunner(MaxwellContainer container) {
+        this.container = container;
+        results = new BitSet();
+        output = new ArrayList<>();
+        errors = new ArrayList<>();
+        colorNames = new HashMap<>();
+        xs = new int[BULK];
+        ys = new int[BULK];
+        vxs = new int[BULK];
+        vys = new int[BULK];
+        colors = new String[BULK];
+    }
+
+    /**
+     * Ejecuta todos los comandos del guion.
+     * @param script guion; no se cierra
+     * @throws IOException si falla la lectura
+     */
+    public void run(Reader script) throws IOException {
+        BufferedReader in = script instanceof BufferedReader
+                            ? (BufferedReader) script : new BufferedReader(script, 1 << 16);
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            pos = 0;
+            String command = nextWord();
+            if (command == null || command.charAt(0) == '#') {
+                continue;
+            }
+            try {
+                execute(command);
+            } catch (IllegalArgumentException e) {
+                flush();
+                record(commands++, false);
+                if (errors.size() < MAX_ERRORS) {
+                    errors.add("Línea " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        flush();
+    }
+
+    /** @return número de comandos ejecutados */
+    public int commandCount() {
+        return commands;
+    }
+
+    /**
+     * @param i número de comando, desde 0
+     * @return ok() del contenedor después del comando i
+     */
+    public boolean ok(int i) {
+        if (i < 0 || i >= commands) {
+            throw new IndexOutOfBoundsException("Comando " + i + " de " + commands);
+        }
+        return results.get(i);
+    }
+
+    /** @return número de comandos que fallaron */
+    public int failureCount() {
+        return failures;
+    }
+
+    /** @return texto devuelto por cada "consult", en orden */
+    public List<String> output() {
+        return output;
+    }
+
+    /** @return primeros errores de sintaxis, con su número de línea */
+    public List<String> errors() {
+        return errors;
+    }
+
+    private void execute(String command) {
+        switch (command) {
+            case "particle": {
+                int x = nextInt();
+                int y = nextInt();
+                String color = color(nextWord());
+                int vx = Particle.UNIT;
+                int vy = Particle.UNIT;
+                if (hasMore()) {
+                    vx = nextInt();
+                    vy = nextInt();
+                }
+                end();
+                if (stepsPending || pendingParticles == BULK) {
+                    flush();
+                }
+                if (pendingParticles == 0) {
+                    pendingFirst = commands;
+                }
+                xs[pendingParticles] = x;
+                ys[pendingParticles] = y;
+                colors[pendingParticles] = color;
+                vxs[pendingParticles] = vx;
+                vys[pendingParticles] = vy;
+                pendingParticles++;
+                commands++;
+                return;
+            }
+            case "start": {
+                int steps = nextInt();
+                end();
+                if (steps < 0) {
+                    // sumado a los "start" pendientes les quitaría pasos
+                    throw new IllegalArgumentException("pasos negativos");
+                }
+                if (pendingParticles > 0 || pendingSteps + steps > Integer.MAX_VALUE) {
+                    flush();
+                }
+                if (!stepsPending) {
+                    pendingFirst = commands;
+                    stepsPending = true;
+                }
+                pendingSteps += steps;
+                commands++;
+                return;
+            }
+            default:
+                break;
+        }
+        // el resto se ejecuta en el momento, después de lo pendiente
+        int[] args = new int[3];
+        int n = 0;
+        switch (command) {
+            case "create":
+            case "resize":
+            case "demon":
+                n = 2;
+                break;
+            case "hole":
+                n = 3;
+                break;
+            case "seed":
+            case "consult":
+            case "visible":
+            case "invisible":
+            case "finish":
+                break;
+            default:
+                throw new IllegalArgumentException("comando desconocido '" + command + "'");
+        }
+        long seed = 0;
+        if (command.equals("seed")) {
+            seed = nextLong();
+        }
+        for (int i = 0; i < n; i++) {
+            args[i] = nextInt();
+        }
+        end();
+        flush();
+        switch (command) {
+            case "create":
+                container.create(args[0], args[1]);
+                break;
+            case "resize":
+                container.resize(args[0], args[1]);
+                break;
+            case "demon":
+                container.addDemon(args[0], args[1]);
+                break;
+            case "hole":
+                container.addHole(args[0], args[1], args[2]);
+                break;
+            case "seed":
+                container.setSeed(seed);
+                break;
+            case "consult":
+                output.add(container.consult());
+                break;
+            case "visible":
+                container.makeVisible();
+                break;
+            case "invisible":
+                container.makeInvisible();
+                break;
+            default:
+                container.finish();
+        }
+        record(commands++, container.ok());
+    }
+
+    /**
+     * Ejecuta el grupo pendiente, si hay, y anota su resultado en cada
+     * uno de sus comandos.
+     */
+    private void flush() {
+        if (pendingParticles > 0) {
+            container.addParticles(pendingParticles, xs, ys, colors, vxs, vys);
+            Arrays.fill(colors, 0, pendingParticles, null);
+            pendingParticles = 0;
+        } else if (stepsPending) {
+            container.start((int) pendingSteps);
+            pendingSteps = 0;
+            stepsPending = false;
+        } else {
+            return;
+        }
+        boolean ok = container.ok();
+        for (int i = pendingFirst; i < commands; i++) {
+            record(i, ok);
+        }
+    }
+
+    private void record(int i, boolean ok) {
+        if (ok) {
+            results.set(i);
+        } else {
+            failures++;
+        }
+    }
+
+    private String color(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("falta el color");
+        }
+        String known = colorNames.putIfAbsent(name, name);
+        return known == null ? name : known;
+    }
+
+    // ----- lectura de la línea actual
+
+    private void skipSpaces() {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private boolean hasMore() {
+        skipSpaces();
+        return pos < line.length();
+    }
+
+    /** @return siguiente palabra, o null si no hay más */
+    private String nextWord() {
+        skipSpaces();
+        int start = pos;
+        while (pos < line.length() && !Character.isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+        return start == pos ? null : line.substring(start, pos);
+    }
+
+    private int nextInt() {
+        long v = nextLong();
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("número fuera de rango");
+        }
+        return (int) v;
+    }
+
+    /**
+     * Lee un entero sin crear un String.
+     */
+    private long nextLong() {
+        skipSpaces();
+        boolean negative = pos < line.length() && line.charAt(pos) == '-';
+        if (negative) {
+            pos++;
+        }
+        int start = pos;
+        long v = 0;
+        while (pos < line.length() && line.charAt(pos) >= '0' && line.charAt(pos) <= '9') {
+            if (v > (Long.MAX_VALUE - 9) / 10) {
+                throw new IllegalArgumentException("número fuera de rango");
+            }
+            v = v * 10 + (line.charAt(pos++) - '0');
+        }
+        if (pos == start || (pos < line.length() && !Character.isWhitespace(line.charAt(pos)))) {
+            throw new IllegalArgumentException("se esperaba un número");
+        }
+        return negative ? -v : v;
+    }
+
+    private void end() {
+        if (hasMore()) {
+            throw new IllegalArgumentException("argumentos de más");
+        }
+    }
+
+    /**
+     * Ejecuta un guion desde un archivo:
+     * {@code java Maxwell.ScriptRunner <guion>}. Muestra el resultado de
+     * cada consult y un resumen.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Uso: java Maxwell.ScriptRunner <guion>");
+            return;
+        }
+        MaxwellContainer container = new MaxwellContainer();
+        ScriptRunner runner = new ScriptRunner(container);
+        try (Reader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            runner.run(in);
+        }
+        for (String text : runner.output()) {
+            System.out.println(text);
+        }
+        for (String error : runner.errors()) {
+            System.out.println("ERROR: " + error);
+        }
+        System.out.println(runner.commandCount() + " comandos, " + runner.failureCount()
+                           + " fallidos");
+    }
+}
@@ -0,0 +1,66 @@
+package shapes;
+
+import java.awt.*;
+import java.awt.geom.*;
+
+/**
+ * The pending move of one shape on the canvas. A shape creates one when
+ * it is drawn and reuses it for every move: the new frame is stored here
+ * and the move is linked into the canvas' list of pending moves only if
+ * it is not there already, so moving a shape allocates nothing and many
+ * moves between two frames are applied once, with the last frame.
+ */
+final class ShapeMove {
+    final Object shape;
+    final int layer;
+    ShapeMove next;        // link in the canvas' list of pending moves
+
+    // last requested frame, guarded by this
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private boolean queued;
+
+    /**
+     * @param shape the geometry added to the canvas
+     * @param layer the layer it was added to
+     */
+    ShapeMove(Object shape, int layer) {
+        this.shape = shape;
+        this.layer = layer;
+    }
+
+    /**
+     * Stores the new frame of the shape.
+     * @return true if the move was not pending, so the caller must link it
+     */
+    synchronized boolean set(int newX, int newY, int newWidth, int newHeight) {
+        x = newX;
+        y = newY;
+        width = newWidth;
+        height = newHeight;
+        if (queued) {
+            return false;
+        }
+        queued = true;
+        return true;
+    }
+
+    /**
+     * Applies the last stored frame to the shape and lets the move be
+     * linked again. An ellipse or rectangle takes the whole frame; a
+     * polygon is translated so its bounds start at (x, y). Runs on the
+     * event thread, the only one that touches the geometry.
+     */
+    synchronized void apply() {
+        queued = false;
+        if (shape instanceof RectangularShape) {
+            ((RectangularShape) shape).setFrame(x, y, width, height);
+        } else if (shape instanceof Polygon) {
+            Polygon polygon = (Polygon) shape;
+            Rectangle bounds = polygon.getBounds();
+            polygon.translate(x - bounds.x, y - bounds.y);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package Maxwell;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Un shard de una {@link ShardedSimulation}: avanza las partículas de su
+ * franja vertical del contenedor. Después de mover cada partícula, si
+ * quedó en la franja de otro shard se la pasa por el buffer compartido;
+ * si ese buffer está lleno se la queda un paso más, así que nunca se
+ * pierde una partícula. Los agujeros son compartidos por todos los shards.
+ *
+ * Cada partícula lleva el paso en que se envió, y un shard solo recibe
+ * las enviadas en pasos anteriores: así ninguna se mueve dos veces en el
+ * mismo paso aunque un shard vaya adelantado. También lleva su número,
+ * el orden en que la agregó el coordinador, para que al final este sepa
+ * a cuál corresponde cada estado que le devuelven.
+ */
+public final class ShardWorker {
+    private final SharedRegion region;
+    private final int shard;
+    private final int maxX;
+    private final int maxY;
+    private int[] fx, fy, vx, vy, colors, ids;
+    private int size;
+    private int[] holeXs, holeYs; // centro del círculo de cada agujero
+    private long[] holeR2s;       // radio al cuadrado
+    private SplittableRandom random;
+
+    private ShardWorker(SharedRegion region, int shard) {
+        this.region = region;
+        this.shard = shard;
+        maxX = region.width - 10;
+        maxY = region.height - 10;
+        fx = new int[1024];
+        fy = new int[1024];
+        vx = new int[1024];
+        vy = new int[1024];
+        colors = new int[1024];
+        ids = new int[1024];
+    }
+
+    /**
+     * Abre el archivo compartido como el shard dado.
+     * @param file archivo creado por {@link ShardedSimulation#create}
+     * @param shard número de shard, desde 0
+     * @return el shard
+     * @throws IOException si no se puede abrir el archivo
+     */
+    public static ShardWorker open(Path file, int shard) throws IOException {
+        SharedRegion region = SharedRegion.open(file);
+        if (shard < 0 || shard >= region.shards) {
+            throw new IllegalArgumentException("Shard " + shard + " de " + region.shards);
+        }
+        return new ShardWorker(region, shard);
+    }
+
+    /**
+     * Espera a que el coordinador arranque la simulación, ejecuta todos
+     * los pasos, le devuelve al coordinador las partículas que le
+     * quedaron y publica cuántas son.
+     */
+    public void run() {
+        int spins = 0;
+        while (region.state() != SharedRegion.RUNNING) {
+            spins = SharedRegion.backOff(spins);
+        }
+        int holes = region.holeCount();
+        holeXs = new int[holes];
+        holeYs = new int[holes];
+        holeR2s = new long[holes];
+        for (int h = 0; h < holes; h++) {
+            int r = region.holeRadius(h);
+            holeXs[h] = region.holeX(h) + r;
+            holeYs[h] = region.holeY(h) + r;
+            holeR2s[h] = (long) r * r;
+        }
+        int steps = region.steps();
+        for (int s = 0; s < steps; s++) {
+            receive(s);
+            step(s);
+            region.arriveAndAwait();
+        }
+        receive(steps);
+        returnParticles(steps);
+        region.finishShard(shard, size);
+    }
+
+    /**
+     * Pasa el estado final de cada partícula al coordinador, esperando
+     * cuando su buffer se llena: el coordinador lo vacía mientras tanto.
+     */
+    private void returnParticles(int steps) {
+        for (int i = 0; i < size; i++) {
+            int spins = 0;
+            while (!region.push(shard, region.shards, steps, fx[i], fy[i], vx[i], vy[i],
+                                colors[i], ids[i])) {
+                spins = SharedRegion.backOff(spins);
+            }
+        }
+    }
+
+    /**
+     * Generador propio del shard, derivado de la semilla de la simulación
+     * igual que {@link MaxwellContainer#randomStream(int)}: no se comparte
+     * con nadie y se repite en cada corrida con la misma semilla.
+     * Disponible una vez arrancada la simulación.
+     * @return generador del shard
+     */
+    public SplittableRandom random() {
+        if (random == null) {
+            SplittableRandom root = new SplittableRandom(region.randomSeed());
+            root.split(); // familia de los escenarios
+            random = new RandomStreams(root.split()).stream(shard);
+        }
+        return random;
+    }
+
+    /** @return número de partículas del shard */
+    public int size() {
+        return size;
+    }
+
+    /** @return coordenada X en píxeles de la partícula i */
+    public int getX(int i) {
+        check(i);
+        return fx[i] >> Particle.SHIFT;
+    }
+
+    /** @return coordenada Y en píxeles de la partícula i */
+    public int getY(int i) {
+        check(i);
+        return fy[i] >> Particle.SHIFT;
+    }
+
+    /** @return velocidad horizontal de la partícula i */
+    public int getVelocityX(int i) {
+        check(i);
+        return vx[i];
+    }
+
+    /** @return velocidad vertical de la partícula i */
+    public int getVelocityY(int i) {
+        check(i);
+        return vy[i];
+    }
+
+    /** @return índice de color de la partícula i */
+    public int getColor(int i) {
+        check(i);
+        return colors[i];
+    }
+
+    /**
+     * @return shard dueño de la coordenada x en píxeles: franjas verticales
+     *         del mismo ancho
+     */
+    static int owner(int x, int shards, int maxX) {
+        return Math.min(shards - 1, (int) ((long) x * shards / (maxX + 1)));
+    }
+
+    /**
+     * Mueve las partículas un paso, con las reglas de
+     * {@link Particle#move(int, int)}, y envía las que cambiaron de franja.
+     */
+    private void step(int s) {
+        int limitX = maxX << Particle.SHIFT;
+        int limitY = maxY << Particle.SHIFT;
+        int i = 0;
+        while (i < size) {
+            int x0 = fx[i] >> Particle.SHIFT;
+            int y0 = fy[i] >> Particle.SHIFT;
+            int nx = fx[i] + vx[i];
+            int ny = fy[i] + vy[i];
+            if (nx < 0 || nx > limitX) {
+                nx = nx < 0 ? -nx : 2 * limitX - nx;
+                vx[i] = -vx[i];
+            }
+            if (ny < 0 || ny > limitY) {
+                ny = ny < 0 ? -ny : 2 * limitY - ny;
+                vy[i] = -vy[i];
+            }
+            nx = Math.max(0, Math.min(nx, limitX));
+            ny = Math.max(0, Math.min(ny, limitY));
+            fx[i] = nx;
+            fy[i] = ny;
+            int x1 = nx >> Particle.SHIFT;
+            int y1 = ny >> Particle.SHIFT;
+            if (captured(x0, y0, x1, y1)) {
+                removeAt(i);
+                continue; // la última partícula ocupa ahora la posición i
+            }
+            int to = owner(x1, region.shards, maxX);
+            if (to != shard && region.push(shard, to, s, nx, ny, vx[i], vy[i], colors[i], ids[i])) {
+                removeAt(i);
+                continue;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * @return true si algún agujero con capacidad tocó el tramo y consumió la partícula
+     */
+    private boolean captured(int x0, int y0, int x1, int y1) {
+        for (int h = 0; h < holeXs.length; h++) {
+            if (HoleIndex.touches(x0, y0, x1, y1, holeXs[h], holeYs[h], holeR2s[h])
+                    && region.consume(h)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Recibe las partículas enviadas a este shard antes del paso s.
+     */
+    private void receive(int s) {
+        for (int from = 0; from <= region.shards; from++) {
+            if (from == shard) {
+                continue;
+            }
+            long tail = region.tail(from, shard);
+            long head = region.head(from, shard);
+            while (tail < head && region.read(from, shard, tail, SharedRegion.STEP) < s) {
+                append(region.read(from, shard, tail, SharedRegion.FX),
+                       region.read(from, shard, tail, SharedRegion.FY),
+                       region.read(from, shard, tail, SharedRegion.VX),
+                       region.read(from, shard, tail, SharedRegion.VY),
+                       region.read(from, shard, tail, SharedRegion.COLOR),
+                       region.read(from, shard, tail, SharedRegion.ID));
+                tail++;
+            }
+            region.release(from, shard, tail);
+        }
+    }
+
+    private void append(int x, int y, int velX, int velY, int color, int id) {
+        if (size == fx.length) {
+            int n = size * 2;
+            fx = Arrays.copyOf(fx, n);
+            fy = Arrays.copyOf(fy, n);
+            vx = Arrays.copyOf(vx, n);
+            vy = Arrays.copyOf(vy, n);
+            colors = Arrays.copyOf(colors, n);
+            ids = Arrays.copyOf(ids, n);
+        }
+        fx[size] = x;
+        fy[size] = y;
+        vx[size] = velX;
+        vy[size] = velY;
+        colors[size] = color;
+        ids[size] = id;
+        size++;
+    }
+
+    /**
+     * Quita la partícula i copiando la última en su lugar.
+     */
+    private void removeAt(int i) {
+        size--;
+        fx[i] = fx[size];
+        fy[i] = fy[size];
+        vx[i] = vx[size];
+        vy[i] = vy[size];
+        colors[i] = colors[size];
+        ids[i] = ids[size];
+    }
+
+    private void check(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Partícula " + i + " de " + size);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package Maxwell;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Simulación repartida entre varios procesos de la misma máquina. Cada
+ * proceso corre un {@link ShardWorker} que se encarga de una franja
+ * vertical del contenedor; todos se comunican por un archivo mapeado en
+ * memoria, sin red ni locks: las partículas que cambian de franja pasan
+ * por buffers circulares, la capacidad de los agujeros se descuenta con
+ * CAS y esta clase, el coordinador, abre la barrera de cada paso cuando
+ * todos los shards terminaron el anterior.
+ *
+ * Uso: crear el archivo con {@link #create}, cargar agujeros y
+ * partículas, lanzar los shards (por ejemplo con {@link #launchWorkers()})
+ * y llamar {@link #run(int)}. Al terminar, los shards devuelven el
+ * estado final de cada partícula. {@link MaxwellContainer#shard(Path, int)}
+ * arma todo a partir de un contenedor y
+ * {@link MaxwellContainer#merge(ShardedSimulation)} le trae el resultado.
+ *
+ * Con agujeros que se llenan, cuál shard se lleva la última unidad de
+ * capacidad depende del orden en que lleguen; fuera de eso el resultado
+ * es el mismo que con start en un solo proceso.
+ */
+public final class ShardedSimulation {
+    private final Path file;
+    private final SharedRegion region;
+    private boolean started;
+    private boolean finished;
+    private int seeded;                       // partículas agregadas, numeradas desde 0
+    // estado final de las partículas, en el orden en que llegaron
+    private int[] ids, fx, fy, vx, vy, colors;
+    private int results;
+    // puestos por MaxwellContainer.shard: de dónde salió cada partícula y agujero
+    MaxwellContainer source;
+    long[] particleHandles;
+    long[] holeHandles;
+
+    private ShardedSimulation(Path file, SharedRegion region) {
+        this.file = file;
+        this.region = region;
+    }
+
+    /**
+     * Crea el archivo compartido.
+     * @param file archivo, se crea o se reemplaza
+     * @param shards número de procesos, de 1 a 64
+     * @param width ancho del contenedor
+     * @param height alto del contenedor
+     * @param ringCapacity partículas que pueden estar en camino entre dos shards
+     * @param seedCapacity partículas iniciales que puede recibir cada shard
+     * @return el coordinador
+     * @throws IOException si no se puede crear el archivo
+     */
+    public static ShardedSimulation create(Path file, int shards, int width, int height,
+                                           int ringCapacity, int seedCapacity) throws IOException {
+        checkShards(shards);
+        int[] seedCapacities = new int[shards];
+        Arrays.fill(seedCapacities, seedCapacity);
+        return create(file, shards, width, height, ringCapacity, seedCapacities);
+    }
+
+    /**
+     * Como create, con la capacidad del buffer de partículas iniciales de
+     * cada shard por separado, para no reservar en el archivo lugar que
+     * nunca se usa.
+     * @param seedCapacities partículas iniciales que puede recibir cada shard
+     */
+    static ShardedSimulation create(Path file, int shards, int width, int height,
+                                    int ringCapacity, int[] seedCapacities) throws IOException {
+        checkShards(shards);
+        if (seedCapacities.length != shards) {
+            throw new IllegalArgumentException("Se necesita una capacidad por shard");
+        }
+        int[] capacities = new int[shards];
+        for (int k = 0; k < shards; k++) {
+            capacities[k] = powerOfTwo(seedCapacities[k]);
+        }
+        SharedRegion region = SharedRegion.create(file, shards, width, height,
+                                                  powerOfTwo(ringCapacity), capacities);
+        return new ShardedSimulation(file, region);
+    }
+
+    /**
+     * Fija la semilla de los generadores de los shards. Solo antes de run.
+     * El shard k recibe el mismo generador que
+     * {@link MaxwellContainer#randomStream(int)} con k en un contenedor
+     * con esa semilla.
+     * @param seed semilla
+     */
+    public void setSeed(long seed) {
+        if (started) {
+            throw new IllegalStateException("La simulación ya se corrió");
+        }
+        region.setRandomSeed(seed);
+    }
+
+    /**
+     * Agrega un agujero del tamaño por omisión. Solo antes de run.
+     * @return false si ya hay el máximo de agujeros o ya se corrió
+     */
+    public boolean addHole(int x, int y, int capacity) {
+        return addHole(x, y, capacity, BlackHole.SIZE / 2);
+    }
+
+    /**
+     * Agrega un agujero de radio dado, con la esquina superior izquierda
+     * de su círculo en (x, y), como {@link MaxwellContainer#addHole(int, int, int, int)}.
+     * Solo antes de run.
+     * @return false si ya hay el máximo de agujeros o ya se corrió
+     */
+    public boolean addHole(int x, int y, int capacity, int radius) {
+        if (started || region.holeCount() == SharedRegion.MAX_HOLES) {
+            return false;
+        }
+        region.addHole(x, y, capacity, radius);
+        return true;
+    }
+
+    /**
+     * Agrega una partícula al shard dueño de su franja. Solo antes de run.
+     * @param vx velocidad horizontal en 1/UNIT de píxel por paso
+     * @param vy velocidad vertical en 1/UNIT de píxel por paso
+     * @param color índice de color elegido por quien llama
+     * @return false si ese shard ya recibió seedCapacity partículas o ya se corrió;
+     *         si no, la partícula lleva el número de las agregadas antes
+     */
+    public boolean addParticle(int x, int y, int vx, int vy, int color) {
+        return seed(x << Particle.SHIFT, y << Particle.SHIFT, vx, vy, color);
+    }
+
+    /**
+     * Como addParticle, con la posición en punto fijo.
+     */
+    boolean seed(int fx, int fy, int vx, int vy, int color) {
+        if (started) {
+            return false;
+        }
+        int to = owner(fx >> Particle.SHIFT, region.shards, region.width);
+        if (!region.push(region.shards, to, -1, fx, fy, vx, vy, color, seeded)) {
+            return false;
+        }
+        seeded++;
+        return true;
+    }
+
+    /**
+     * Lanza un proceso Java por shard, con el mismo classpath que este.
+     * @return los procesos, para esperarlos o matarlos
+     * @throws IOException si no se pudo lanzar alguno
+     */
+    public List<Process> launchWorkers() throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        List<Process> workers = new ArrayList<>();
+        for (int k = 0; k < region.shards; k++) {
+            workers.add(new ProcessBuilder(java, "-cp", classpath, ShardedSimulation.class.getName(),
+                                           file.toAbsolutePath().toString(), Integer.toString(k))
+                        .inheritIO()
+                        .start());
+        }
+        return workers;
+    }
+
+    /**
+     * Arranca los shards, abre la barrera de cada paso, recibe el estado
+     * final de las partículas y espera a que todos terminen. Los shards
+     * pueden estar ya esperando o abrirse después.
+     * @param steps número de pasos
+     */
+    public void run(int steps) {
+        if (started) {
+            throw new IllegalStateException("La simulación ya se corrió");
+        }
+        started = true;
+        region.start(steps);
+        for (int s = 0; s < steps; s++) {
+            region.releaseWhenAllArrive();
+        }
+        int n = Math.max(seeded, 16);
+        ids = new int[n];
+        fx = new int[n];
+        fy = new int[n];
+        vx = new int[n];
+        vy = new int[n];
+        colors = new int[n];
+        for (int k = 0; k < region.shards; k++) {
+            // el shard se bloquea si su buffer se llena: se vacía mientras tanto
+            int spins = 0;
+            while (true) {
+                boolean done = region.isShardFinished(k);
+                boolean received = collect(k);
+                if (done) {
+                    break; // todo lo que envió antes de terminar ya se recibió
+                }
+                if (!received) {
+                    spins = SharedRegion.backOff(spins);
+                }
+            }
+        }
+        finished = true;
+    }
+
+    /**
+     * Recibe las partículas que devolvió el shard k.
+     * @return true si había alguna
+     */
+    private boolean collect(int k) {
+        int me = region.shards;
+        long tail = region.tail(k, me);
+        long head = region.head(k, me);
+        if (tail == head) {
+            return false;
+        }
+        for (; tail < head; tail++) {
+            int id = region.read(k, me, tail, SharedRegion.ID);
+            if (results == ids.length) {
+                int n = results * 2;
+                ids = Arrays.copyOf(ids, n);
+                fx = Arrays.copyOf(fx, n);
+                fy = Arrays.copyOf(fy, n);
+                vx = Arrays.copyOf(vx, n);
+                vy = Arrays.copyOf(vy, n);
+                colors = Arrays.copyOf(colors, n);
+            }
+            ids[results] = id;
+            fx[results] = region.read(k, me, tail, SharedRegion.FX);
+            fy[results] = region.read(k, me, tail, SharedRegion.FY);
+            vx[results] = region.read(k, me, tail, SharedRegion.VX);
+            vy[results] = region.read(k, me, tail, SharedRegion.VY);
+            colors[results] = region.read(k, me, tail, SharedRegion.COLOR);
+            results++;
+        }
+        region.release(k, me, tail);
+        return true;
+    }
+
+    /** @return true si run ya terminó */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /** @return pasos que se corrieron, 0 antes de run */
+    int steps() {
+        return started ? region.steps() : 0;
+    }
+
+    /** @return partículas devueltas por los shards, después de run */
+    public int getResultCount() {
+        return results;
+    }
+
+    /**
+     * @return número de la partícula r devuelta, el orden en que se agregó
+     */
+    public int getResultId(int r) {
+        checkResult(r);
+        return ids[r];
+    }
+
+    /** @return coordenada X en píxeles de la partícula r devuelta */
+    public int getResultX(int r) {
+        checkResult(r);
+        return fx[r] >> Particle.SHIFT;
+    }
+
+    /** @return coordenada Y en píxeles de la partícula r devuelta */
+    public int getResultY(int r) {
+        checkResult(r);
+        return fy[r] >> Particle.SHIFT;
+    }
+
+    /** @return coordenada X en punto fijo de la partícula r devuelta */
+    int getResultFixedX(int r) {
+        return fx[r];
+    }
+
+    /** @return coordenada Y en punto fijo de la partícula r devuelta */
+    int getResultFixedY(int r) {
+        return fy[r];
+    }
+
+    /** @return velocidad horizontal de la partícula r devuelta */
+    public int getResultVelocityX(int r) {
+        checkResult(r);
+        return vx[r];
+    }
+
+    /** @return velocidad vertical de la partícula r devuelta */
+    public int getResultVelocityY(int r) {
+        checkResult(r);
+        return vy[r];
+    }
+
+    /** @return índice de color de la partícula r devuelta */
+    public int getResultColor(int r) {
+        checkResult(r);
+        return colors[r];
+    }
+
+    /** @return número de shards */
+    public int getShardCount() {
+        return region.shards;
+    }
+
+    /** @return partículas al final de run, sumando todos los shards */
+    public long getParticleCount() {
+        long total = 0;
+        for (int k = 0; k < region.shards; k++) {
+            total += region.shardParticles(k);
+        }
+        return total;
+    }
+
+    /** @return número de agujeros */
+    public int getHoleCount() {
+        return region.holeCount();
+    }
+
+    /** @return partículas consumidas por el agujero i */
+    public int getHoleFill(int i) {
+        if (i < 0 || i >= region.holeCount()) {
+            throw new IndexOutOfBoundsException("Agujero " + i + " de " + region.holeCount());
+        }
+        return region.holeFill(i);
+    }
+
+    /**
+     * Proceso de un shard: {@code java Maxwell.ShardedSimulation <archivo> <shard>}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Uso: java Maxwell.ShardedSimulation <archivo> <shard>");
+            return;
+        }
+        ShardWorker.open(Paths.get(args[0]), Integer.parseInt(args[1])).run();
+    }
+
+    /**
+     * @return shard dueño de la partícula con coordenada x en píxeles,
+     *         el que la recibe en seed
+     */
+    static int owner(int x, int shards, int width) {
+        return ShardWorker.owner(x, shards, width - 10);
+    }
+
+    private void checkResult(int r) {
+        if (r < 0 || r >= results) {
+            throw new IndexOutOfBoundsException("Partícula " + r + " de " + results);
+        }
+    }
+
+    private static void checkShards(int shards) {
+        if (shards < 1 || shards > SharedRegion.MAX_SHARDS) {
+            throw new IllegalArgumentException("Shards entre 1 y " + SharedRegion.MAX_SHARDS
+                                               + ": " + shards);
+        }
+    }
+
+    private static int powerOfTwo(int n) {
+        return Integer.highestOneBit(Math.max(n - 1, 1)) << 1;
+    }
+}
@@ -0,0 +1,384 @@
+package Maxwell;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Archivo mapeado en memoria que comparten el coordinador y los shards
+ * de una {@link ShardedSimulation}, cada uno en su propio proceso.
+ *
+ * Contenido, en little-endian:
+ * <ul>
+ * <li>encabezado: dimensiones, número de shards, capacidades, estado,
+ *     la barrera de pasos y el resultado de cada shard;</li>
+ * <li>tabla de agujeros: posición, radio, capacidad restante y
+ *     partículas consumidas; la capacidad se descuenta con CAS, así dos shards no
+ *     pueden llenar el mismo agujero de más;</li>
+ * <li>un buffer circular por cada par (origen, destino), con un solo
+ *     productor y un solo consumidor. El origen {@code shards} es el
+ *     coordinador, que reparte las partículas iniciales; el buffer que
+ *     va a cada shard tiene su propia capacidad. El destino
+ *     {@code shards} también es el coordinador: al terminar, cada shard
+ *     le devuelve por ahí sus partículas.</li>
+ * </ul>
+ * El archivo no se mapea entero: el encabezado y los agujeros van en un
+ * mapeo y cada buffer circular en los suyos, de a lo sumo
+ * WINDOW_RECORDS partículas, así que el archivo puede pasar de 2 GB.
+ * Los índices de los buffers y la barrera se leen y escriben con
+ * VarHandles sobre los buffers mapeados, así que la visibilidad entre
+ * procesos no depende de ningún lock.
+ */
+final class SharedRegion {
+    private static final int MAGIC = 0x4D585348; // "MXSH"
+    static final int MAX_SHARDS = 64;
+    static final int MAX_HOLES = 256;
+    /** paso, fx, fy, vx, vy, color y número de partícula */
+    static final int RECORD_BYTES = 28;
+    static final int STEP = 0, FX = 4, FY = 8, VX = 12, VY = 16, COLOR = 20, ID = 24;
+
+    static final int CREATED = 0, RUNNING = 1;
+
+    // encabezado
+    private static final int SHARDS = 4, WIDTH = 8, HEIGHT = 12, HOLE_COUNT = 16,
+                             RING_CAPACITY = 20, STEPS = 28, STATE = 32, RANDOM_SEED = 40;
+    private static final int ARRIVED = 64;      // en su propia línea de caché
+    private static final int GENERATION = 128;
+    // 64 bytes por shard: partículas, fin y capacidad de su buffer de semillas
+    private static final int SHARD_INFO = 192;
+    private static final int PARTICLES = 0, FINISHED = 8, SEED_CAPACITY = 12;
+    private static final int HOLES = SHARD_INFO + 64 * MAX_SHARDS;
+    private static final int HOLE_BYTES = 20;   // x, y, capacidad restante, consumidas, radio
+    private static final int RINGS = HOLES + HOLE_BYTES * MAX_HOLES;
+    private static final int RING_HEADER = 128; // cabeza y cola en líneas distintas
+    /** partículas por mapeo de un buffer circular, potencia de dos */
+    static final int WINDOW_RECORDS = 1 << 24;
+
+    private static final VarHandle LONG =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT =
+        MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int SPINS = 1000;
+
+    private final MappedByteBuffer buffer;      // encabezado y agujeros
+    private final Ring[] rings;                 // from * shards + to, después los del coordinador
+                                                // a cada shard y los de cada shard al coordinador
+    final int shards;
+    final int width;
+    final int height;
+
+    /**
+     * Mapea los buffers circulares descritos en el encabezado.
+     */
+    private SharedRegion(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        shards = buffer.getInt(SHARDS);
+        width = buffer.getInt(WIDTH);
+        height = buffer.getInt(HEIGHT);
+        int ringCapacity = buffer.getInt(RING_CAPACITY);
+        rings = new Ring[shards * shards + 2 * shards];
+        long at = RINGS;
+        for (int i = 0; i < rings.length; i++) {
+            int seedRing = i - shards * shards;
+            int capacity = seedRing < 0 || seedRing >= shards ? ringCapacity
+                           : buffer.getInt(SHARD_INFO + 64 * seedRing + SEED_CAPACITY);
+            rings[i] = new Ring(channel, at, capacity);
+            at += ringBytes(capacity);
+        }
+    }
+
+    /**
+     * Crea (o reemplaza) el archivo compartido.
+     * @param ringCapacity partículas por buffer entre shards, potencia de dos
+     * @param seedCapacities partículas del buffer del coordinador a cada
+     *        shard, potencias de dos
+     */
+    static SharedRegion create(Path file, int shards, int width, int height,
+                               int ringCapacity, int[] seedCapacities) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, RINGS);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(SHARDS, shards);
+            buffer.putInt(WIDTH, width);
+            buffer.putInt(HEIGHT, height);
+            buffer.putInt(RING_CAPACITY, ringCapacity);
+            for (int k = 0; k < shards; k++) {
+                buffer.putInt(SHARD_INFO + 64 * k + SEED_CAPACITY, seedCapacities[k]);
+            }
+            SharedRegion region = new SharedRegion(channel, buffer); // agranda el archivo
+            INT.setRelease(buffer, 0, MAGIC); // lo último: el archivo ya está listo
+            return region;
+        }
+    }
+
+    /**
+     * Abre un archivo creado por {@link #create}.
+     */
+    static SharedRegion open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            if (channel.size() < RINGS) {
+                throw new IOException("No es una región de simulación compartida: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, RINGS);
+            if ((int) INT.getAcquire(buffer.order(ByteOrder.LITTLE_ENDIAN), 0) != MAGIC) {
+                throw new IOException("No es una región de simulación compartida: " + file);
+            }
+            return new SharedRegion(channel, buffer);
+        }
+    }
+
+    // ----- estado y resultados
+
+    int state() {
+        return (int) INT.getAcquire(buffer, STATE);
+    }
+
+    /** Publica el número de pasos y deja arrancar a los shards. */
+    void start(int steps) {
+        buffer.putInt(STEPS, steps);
+        INT.setRelease(buffer, STATE, RUNNING);
+    }
+
+    int steps() {
+        return buffer.getInt(STEPS);
+    }
+
+    void setRandomSeed(long seed) {
+        buffer.putLong(RANDOM_SEED, seed);
+    }
+
+    long randomSeed() {
+        return buffer.getLong(RANDOM_SEED);
+    }
+
+    void finishShard(int shard, long particles) {
+        buffer.putLong(SHARD_INFO + 64 * shard + PARTICLES, particles);
+        INT.setRelease(buffer, SHARD_INFO + 64 * shard + FINISHED, 1);
+    }
+
+    boolean isShardFinished(int shard) {
+        return (int) INT.getAcquire(buffer, SHARD_INFO + 64 * shard + FINISHED) == 1;
+    }
+
+    long shardParticles(int shard) {
+        return buffer.getLong(SHARD_INFO + 64 * shard + PARTICLES);
+    }
+
+    // ----- agujeros
+
+    int holeCount() {
+        return (int) INT.getAcquire(buffer, HOLE_COUNT);
+    }
+
+    /** Solo el coordinador, antes de start. */
+    void addHole(int x, int y, int capacity, int radius) {
+        int n = buffer.getInt(HOLE_COUNT);
+        int at = HOLES + HOLE_BYTES * n;
+        buffer.putInt(at, x);
+        buffer.putInt(at + 4, y);
+        buffer.putInt(at + 8, capacity);
+        buffer.putInt(at + 12, 0);
+        buffer.putInt(at + 16, radius);
+        INT.setRelease(buffer, HOLE_COUNT, n + 1);
+    }
+
+    int holeX(int i) {
+        return buffer.getInt(HOLES + HOLE_BYTES * i);
+    }
+
+    int holeY(int i) {
+        return buffer.getInt(HOLES + HOLE_BYTES * i + 4);
+    }
+
+    int holeRadius(int i) {
+        return buffer.getInt(HOLES + HOLE_BYTES * i + 16);
+    }
+
+    int holeFill(int i) {
+        return (int) INT.getVolatile(buffer, HOLES + HOLE_BYTES * i + 12);
+    }
+
+    /**
+     * Descuenta una unidad de capacidad del agujero i, si le queda.
+     * @return true si el agujero consumió la partícula
+     */
+    boolean consume(int i) {
+        int at = HOLES + HOLE_BYTES * i + 8;
+        int left = (int) INT.getVolatile(buffer, at);
+        while (left > 0) {
+            int seen = (int) INT.compareAndExchange(buffer, at, left, left - 1);
+            if (seen == left) {
+                INT.getAndAdd(buffer, at + 4, 1);
+                return true;
+            }
+            left = seen;
+        }
+        return false;
+    }
+
+    boolean hasCapacity(int i) {
+        return (int) INT.getVolatile(buffer, HOLES + HOLE_BYTES * i + 8) > 0;
+    }
+
+    // ----- buffers circulares
+
+    /**
+     * Escribe una partícula en el buffer de 'from' a 'to'; 'to' igual a
+     * shards es el coordinador. Solo lo llama el dueño de 'from'.
+     * @return false si el buffer está lleno
+     */
+    boolean push(int from, int to, int step, int fx, int fy, int vx, int vy, int color, int id) {
+        Ring ring = ring(from, to);
+        long head = (long) LONG.getOpaque(ring.header, 0);
+        long tail = (long) LONG.getAcquire(ring.header, 64);
+        if (head - tail >= ring.capacity) {
+            return false;
+        }
+        ByteBuffer window = ring.window(head);
+        int at = ring.offset(head);
+        window.putInt(at + STEP, step);
+        window.putInt(at + FX, fx);
+        window.putInt(at + FY, fy);
+        window.putInt(at + VX, vx);
+        window.putInt(at + VY, vy);
+        window.putInt(at + COLOR, color);
+        window.putInt(at + ID, id);
+        LONG.setRelease(ring.header, 0, head + 1);
+        return true;
+    }
+
+    /** @return índice siguiente a la última partícula publicada de 'from' a 'to' */
+    long head(int from, int to) {
+        return (long) LONG.getAcquire(ring(from, to).header, 0);
+    }
+
+    /** @return índice de la primera partícula sin leer de 'from' a 'to' */
+    long tail(int from, int to) {
+        return (long) LONG.getOpaque(ring(from, to).header, 64);
+    }
+
+    /** Marca como leídas las partículas anteriores a index. Solo el consumidor. */
+    void release(int from, int to, long index) {
+        LONG.setRelease(ring(from, to).header, 64, index);
+    }
+
+    /** @return campo 'field' de la partícula index del buffer de 'from' a 'to' */
+    int read(int from, int to, long index, int field) {
+        Ring ring = ring(from, to);
+        return ring.window(index).getInt(ring.offset(index) + field);
+    }
+
+    // ----- barrera
+
+    /**
+     * Llega a la barrera del paso y espera a que el coordinador la abra.
+     */
+    void arriveAndAwait() {
+        long generation = (long) LONG.getAcquire(buffer, GENERATION);
+        LONG.getAndAdd(buffer, ARRIVED, 1L);
+        int spins = 0;
+        while ((long) LONG.getAcquire(buffer, GENERATION) == generation) {
+            spins = backOff(spins);
+        }
+    }
+
+    /**
+     * Espera a que lleguen todos los shards y abre la barrera.
+     * Solo lo llama el coordinador.
+     */
+    void releaseWhenAllArrive() {
+        int spins = 0;
+        while ((long) LONG.getAcquire(buffer, ARRIVED) < shards) {
+            spins = backOff(spins);
+        }
+        LONG.setRelease(buffer, ARRIVED, 0L);
+        LONG.getAndAdd(buffer, GENERATION, 1L);
+    }
+
+    /**
+     * Espera activa corta y después pausas, para no gastar un núcleo
+     * entero si otro proceso se atrasa.
+     */
+    static int backOff(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(50_000L);
+        }
+        return spins + 1;
+    }
+
+    /**
+     * Escribe en disco el contenido, para poder inspeccionarlo después.
+     */
+    void force() {
+        buffer.force();
+        for (Ring ring : rings) {
+            ring.header.force();
+            for (MappedByteBuffer window : ring.windows) {
+                window.force();
+            }
+        }
+    }
+
+    private Ring ring(int from, int to) {
+        if (from == shards) {
+            return rings[shards * shards + to];
+        }
+        return rings[to == shards ? shards * shards + shards + from : from * shards + to];
+    }
+
+    private static long ringBytes(int capacity) {
+        return RING_HEADER + (long) capacity * RECORD_BYTES;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long at, long bytes)
+            throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, at, bytes);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        return mapped;
+    }
+
+    /**
+     * Un buffer circular: la cabeza y la cola en un mapeo y las
+     * partículas en mapeos de WINDOW_RECORDS, para que ninguno pase del
+     * límite de un ByteBuffer.
+     */
+    private static final class Ring {
+        final MappedByteBuffer header;
+        final MappedByteBuffer[] windows;
+        final int capacity;
+
+        Ring(FileChannel channel, long at, int capacity) throws IOException {
+            this.capacity = capacity;
+            header = map(channel, at, RING_HEADER);
+            windows = new MappedByteBuffer[(capacity - 1) / WINDOW_RECORDS + 1];
+            for (int w = 0; w < windows.length; w++) {
+                int records = Math.min(WINDOW_RECORDS, capacity - w * WINDOW_RECORDS);
+                windows[w] = map(channel, at + RING_HEADER + (long) w * WINDOW_RECORDS * RECORD_BYTES,
+                                 (long) records * RECORD_BYTES);
+            }
+        }
+
+        /** @return mapeo que tiene la partícula index */
+        ByteBuffer window(long index) {
+            return windows[(int) ((index & (capacity - 1)) / WINDOW_RECORDS)];
+        }
+
+        /** @return posición de la partícula index dentro de su mapeo */
+        int offset(long index) {
+            return (int) (index & (capacity - 1) & (WINDOW_RECORDS - 1)) * RECORD_BYTES;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package Maxwell;
+
+/**
+ * Recibe los eventos de la simulación en lotes.
+ * Se llama desde el hilo de eventos del contenedor, nunca desde el hilo
+ * que ejecuta {@link MaxwellContainer#start}.
+ */
+public interface SimulationListener {
+    /**
+     * Procesa un lote de eventos. El lote solo es válido durante la
+     * llamada: hay que copiar lo que se quiera conservar.
+     * @param batch eventos en el orden en que ocurrieron
+     */
+    void onEvents(EventBatch batch);
+}
@@ -0,0 +1,193 @@
+package Maxwell;
+
+import java.util.Arrays;
+
+/**
+ * Rejilla espacial de las partículas para consultas por cercanía.
+ * El contenedor se divide en celdas de {@link #CELL} píxeles; cada celda
+ * tiene una lista doblemente enlazada de las partículas que contiene,
+ * guardada en arreglos indexados por la posición de la partícula en el
+ * contenedor, así el paso recorre estos arreglos en el mismo orden que a
+ * las partículas. Agregar, quitar, mover y cambiar de posición son O(1),
+ * y mover no hace nada si la partícula sigue en la misma celda, que es
+ * lo común porque en un paso se avanza mucho menos que una celda.
+ */
+class SpatialGrid {
+    /** Lado de una celda en píxeles. */
+    static final int CELL = 32;
+
+    private int cols;
+    private int rows;
+    private int[] head;    // celda -> primera partícula, -1 si está vacía
+    private int[] next;    // partícula -> siguiente en su celda, o -1
+    private int[] prev;    // partícula -> anterior en su celda, o -1
+    private int[] cellOf;  // partícula -> celda, -1 si no está en la rejilla
+    private int[] xs;      // partícula -> posición
+    private int[] ys;
+    private int[] found;   // resultado de la última consulta
+    private int foundCount;
+
+    /**
+     * Crea una rejilla vacía para un contenedor de width x height.
+     */
+    SpatialGrid(int width, int height) {
+        next = new int[16];
+        prev = new int[16];
+        cellOf = new int[16];
+        xs = new int[16];
+        ys = new int[16];
+        found = new int[16];
+        reset(width, height);
+    }
+
+    /**
+     * Vacía la rejilla y la adapta a nuevas dimensiones.
+     */
+    void reset(int width, int height) {
+        cols = width / CELL + 1;
+        rows = height / CELL + 1;
+        if (head == null || head.length != cols * rows) {
+            head = new int[cols * rows];
+        }
+        Arrays.fill(head, -1);
+        Arrays.fill(cellOf, -1);
+    }
+
+    /**
+     * Agrega la partícula i en (x, y).
+     */
+    void add(int i, int x, int y) {
+        if (i >= cellOf.length) {
+            int n = Math.max(cellOf.length * 2, i + 1);
+            next = Arrays.copyOf(next, n);
+            prev = Arrays.copyOf(prev, n);
+            int old = cellOf.length;
+            cellOf = Arrays.copyOf(cellOf, n);
+            Arrays.fill(cellOf, old, n, -1);
+            xs = Arrays.copyOf(xs, n);
+            ys = Arrays.copyOf(ys, n);
+        }
+        xs[i] = x;
+        ys[i] = y;
+        link(i, cell(x, y));
+    }
+
+    /**
+     * Lleva la partícula i a (x, y).
+     */
+    void move(int i, int x, int y) {
+        xs[i] = x;
+        ys[i] = y;
+        int c = cell(x, y);
+        if (c != cellOf[i]) {
+            unlink(i);
+            link(i, c);
+        }
+    }
+
+    /**
+     * Quita la partícula i, si está.
+     */
+    void remove(int i) {
+        if (i < cellOf.length && cellOf[i] >= 0) {
+            unlink(i);
+        }
+    }
+
+    /**
+     * La partícula 'from' pasa a ser la 'to', que ya no está en la
+     * rejilla; es lo que pasa al borrar del contenedor, cuando la última
+     * ocupa el lugar de la borrada.
+     */
+    void relocate(int from, int to) {
+        int c = cellOf[from];
+        int n = next[from];
+        int p = prev[from];
+        next[to] = n;
+        prev[to] = p;
+        cellOf[to] = c;
+        xs[to] = xs[from];
+        ys[to] = ys[from];
+        if (p >= 0) {
+            next[p] = to;
+        } else {
+            head[c] = to;
+        }
+        if (n >= 0) {
+            prev[n] = to;
+        }
+        cellOf[from] = -1;
+    }
+
+    /**
+     * Busca las partículas a distancia menor o igual a radius de (x, y).
+     * Solo recorre las celdas que toca el cuadrado que encierra al círculo.
+     * @return cuántas encontró; sus posiciones se leen con {@link #found(int)}
+     */
+    int query(int x, int y, int radius) {
+        foundCount = 0;
+        long r2 = (long) radius * radius;
+        int c0 = clamp((x - radius) / CELL, cols);
+        int c1 = clamp((x + radius) / CELL, cols);
+        int r0 = clamp((y - radius) / CELL, rows);
+        int r1 = clamp((y + radius) / CELL, rows);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                for (int s = head[r * cols + c]; s >= 0; s = next[s]) {
+                    long dx = xs[s] - x;
+                    long dy = ys[s] - y;
+                    if (dx * dx + dy * dy <= r2) {
+                        if (foundCount == found.length) {
+                            found = Arrays.copyOf(found, foundCount * 2);
+                        }
+                        found[foundCount++] = s;
+                    }
+                }
+            }
+        }
+        return foundCount;
+    }
+
+    /**
+     * @return posición en el contenedor del resultado i de la última consulta
+     */
+    int found(int i) {
+        if (i >= foundCount) {
+            throw new IndexOutOfBoundsException("Resultado " + i + " de " + foundCount);
+        }
+        return found[i];
+    }
+
+    private int cell(int x, int y) {
+        return clamp(y / CELL, rows) * cols + clamp(x / CELL, cols);
+    }
+
+    private static int clamp(int i, int n) {
+        return i < 0 ? 0 : i >= n ? n - 1 : i;
+    }
+
+    private void link(int i, int c) {
+        int first = head[c];
+        next[i] = first;
+        prev[i] = -1;
+        if (first >= 0) {
+            prev[first] = i;
+        }
+        head[c] = i;
+        cellOf[i] = c;
+    }
+
+    private void unlink(int i) {
+        int n = next[i];
+        int p = prev[i];
+        if (p >= 0) {
+            next[p] = n;
+        } else {
+            head[cellOf[i]] = n;
+        }
+        if (n >= 0) {
+            prev[n] = p;
+        }
+        cellOf[i] = -1;
+    }
+}
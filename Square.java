@@ -12,6 +12,9 @@ public class Square {
     private int size;
     private String color;
     private boolean isVisible;
+    private int layer;
+    private Rectangle2D.Double shape; // on the canvas; only the event thread changes it
+    private ShapeMove move; // reused for every move of the shape
 
     /**
      * Create a new square at default position with default color.
@@ -22,14 +25,17 @@ public class Square {
         size = 40;
         color = "red";
         isVisible = false;
+        layer = Canvas.DYNAMIC_LAYER;
     }
 
     /**
      * Make this square visible.
      */
     public void makeVisible() {
-        isVisible = true;
-        draw();
+        if (!isVisible) {
+            isVisible = true;
+            draw();
+        }
     }
 
     /**
@@ -73,9 +79,7 @@ public class Square {
      * @param distance positive (right) or negative (left)
      */
     public void moveHorizontal(int distance) {
-        erase();
-        xPosition += distance;
-        draw();
+        moveBy(distance, 0);
     }
 
     /**
@@ -83,9 +87,19 @@ public class Square {
      * @param distance positive (down) or negative (up)
      */
     public void moveVertical(int distance) {
-        erase();
-        yPosition += distance;
-        draw();
+        moveBy(0, distance);
+    }
+
+    /**
+     * Move the square by 'dx' pixels horizontally and 'dy' pixels vertically
+     * in a single update, without allocating a new shape.
+     * @param dx positive (right) or negative (left)
+     * @param dy positive (down) or negative (up)
+     */
+    public void moveBy(int dx, int dy) {
+        xPosition += dx;
+        yPosition += dy;
+        update();
     }
 
     /**
@@ -116,9 +130,8 @@ public class Square {
      * @param newSize new side length of the square
      */
     public void changeSize(int newSize) {
-        erase();
         size = newSize;
-        draw();
+        update();
     }
 
     /**
@@ -127,17 +140,32 @@ public class Square {
      * @param newColor string name of the color
      */
     public void changeColor(String newColor) {
+        erase();
         color = newColor;
         draw();
     }
 
+    /**
+     * Move the square to another canvas layer. Shapes that rarely change
+     * belong in Canvas.STATIC_LAYER; moving ones in Canvas.DYNAMIC_LAYER.
+     * @param newLayer the new layer
+     */
+    public void changeLayer(int newLayer) {
+        erase();
+        layer = newLayer;
+        draw();
+    }
+
     /**
      * Draw the square with current specifications on screen.
      */
     private void draw() {
         if(isVisible) {
             Canvas canvas = Canvas.getCanvas();
-            canvas.add(createShape(), convertColor(color));
+            // a new geometry, since the canvas may still paint the old one
+            shape = new Rectangle2D.Double(xPosition, yPosition, size, size);
+            move = new ShapeMove(shape, layer);
+            canvas.add(shape, convertColor(color), layer);
         }
     }
 
@@ -147,15 +175,19 @@ public class Square {
     private void erase() {
         if(isVisible) {
             Canvas canvas = Canvas.getCanvas();
-            canvas.remove(createShape());
+            canvas.remove(shape, layer);
         }
     }
 
     /**
-     * Create the shape representation for the square.
+     * Store the current position and size in the shape's pending move;
+     * the canvas applies it on the event thread and repaints the area
+     * covered by the old and the new position.
      */
-    private Shape createShape() {
-        return new Rectangle2D.Double(xPosition, yPosition, size, size);
+    private void update() {
+        if(isVisible) {
+            Canvas.getCanvas().move(move, xPosition, yPosition, size, size);
+        }
     }
 
     /**
@@ -0,0 +1,330 @@
+package Maxwell;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Escribe una fila de CSV compacto por paso con las estadísticas de la
+ * simulación: paso, partículas, partículas por color, llenado de cada
+ * agujero y cruces de cámara.
+ *
+ * Las filas se arman en ASCII directamente sobre un ByteBuffer, sin crear
+ * Strings; los nombres de colores del encabezado van en UTF-8 y entre
+ * comillas si hace falta. Cuando el buffer se llena se le pasa a un hilo que lo escribe
+ * en el FileChannel mientras la simulación sigue con otro buffer; solo se
+ * espera si el disco se atrasa más de {@link #BUFFERS} buffers.
+ *
+ * Cada archivo tiene un solo encabezado. Si cambia la cantidad de colores
+ * o de agujeros las filas siguientes van a otro archivo, con su propio
+ * encabezado: "stats.csv" sigue en "stats.1.csv", "stats.2.csv", etc.
+ *
+ * Una interrupción no corta la entrega de un buffer lleno: se termina de
+ * pasar al hilo de escritura y después se restaura la marca.
+ */
+class StatsWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int BUFFERS = 3;
+    private static final int MAX_NUMBER = 21; // signo, 19 dígitos y la coma
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private static final ByteBuffer NEXT = ByteBuffer.allocate(0); // pasar al archivo siguiente
+
+    private final Path file;
+    private volatile FileChannel channel;            // después de abrirlo, solo lo cambia el hilo de escritura
+    private final ArrayBlockingQueue<ByteBuffer> free;
+    private final ArrayBlockingQueue<ByteBuffer> full;
+    private final Thread thread;
+    private final byte[] digits;
+    private int part;                                // archivo actual, solo del hilo de escritura
+    private ByteBuffer current;
+    private int headerColors;
+    private int headerHoles;
+    private boolean interrupted;                     // interrupción a restaurar al terminar
+    private volatile IOException failure;
+
+    /**
+     * Crea (o trunca) el archivo y arranca el hilo de escritura.
+     * @throws IOException si no se puede abrir el archivo
+     */
+    StatsWriter(Path file) throws IOException {
+        this.file = file;
+        channel = open(file);
+        free = new ArrayBlockingQueue<>(BUFFERS);
+        full = new ArrayBlockingQueue<>(BUFFERS + 1);
+        for (int i = 1; i < BUFFERS; i++) {
+            free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        }
+        current = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        digits = new byte[20];
+        headerColors = -1;
+        headerHoles = -1;
+        thread = new Thread(this::drain, "maxwell-stats");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Agrega la fila de un paso.
+     * @param colors paleta del contenedor, en orden de índice
+     * @param crossings partículas que cambiaron de cámara en el paso
+     */
+    void row(long step, int particles, ChamberCounts counts, List<String> colors,
+             HandleTable<BlackHole> holes, int crossings) {
+        int nColors = colors.size();
+        int nHoles = holes.size();
+        if (nColors != headerColors || nHoles != headerHoles) {
+            if (headerColors >= 0) {
+                nextFile();
+            }
+            header(colors, nHoles);
+        }
+        ensure(MAX_NUMBER * (nColors + nHoles + 3));
+        putLong(step);
+        put(',');
+        putLong(particles);
+        for (int c = 0; c < nColors; c++) {
+            put(',');
+            putLong(counts.count(0, c) + counts.count(1, c));
+        }
+        for (int i = 0; i < nHoles; i++) {
+            put(',');
+            putLong(holes.get(i).getFill());
+        }
+        put(',');
+        putLong(crossings);
+        put('\n');
+        restoreInterrupt();
+    }
+
+    /**
+     * @return nombre del archivo número n: "stats.csv" da "stats.n.csv"
+     */
+    static Path part(Path file, int n) {
+        if (n == 0) {
+            return file;
+        }
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String numbered = dot > 0 ? name.substring(0, dot) + "." + n + name.substring(dot)
+                                  : name + "." + n;
+        return file.resolveSibling(numbered);
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Entrega lo escrito con el encabezado anterior y le pide al hilo de
+     * escritura que siga en el archivo siguiente.
+     */
+    private void nextFile() {
+        if (current.position() > 0) {
+            handOff();
+        }
+        send(NEXT);
+    }
+
+    /**
+     * Escribe lo que falta, espera al hilo de escritura y cierra el archivo.
+     * @throws IOException si alguna escritura falló
+     */
+    void close() throws IOException {
+        try {
+            if (current.position() > 0) {
+                handOff();
+            }
+            send(END);
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            channel.close();
+            restoreInterrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void header(List<String> colors, int nHoles) {
+        // largo exacto en bytes; los nombres se codifican una vez
+        byte[][] names = new byte[colors.size()][];
+        int length = "step,particles".length() + ",crossings\n".length();
+        for (int c = 0; c < names.length; c++) {
+            names[c] = csv(colors.get(c)).getBytes(StandardCharsets.UTF_8);
+            length += names[c].length + 1;
+        }
+        for (int i = 0; i < nHoles; i++) {
+            length += ",hole".length() + digitCount(i);
+        }
+        ensure(length);
+        putAscii("step,particles");
+        for (byte[] name : names) {
+            put(',');
+            current.put(name);
+        }
+        for (int i = 0; i < nHoles; i++) {
+            putAscii(",hole");
+            putLong(i);
+        }
+        putAscii(",crossings\n");
+        headerColors = colors.size();
+        headerHoles = nHoles;
+    }
+
+    /**
+     * Deja al menos 'bytes' libres en el buffer actual, pasando el lleno
+     * al hilo de escritura.
+     */
+    private void ensure(int bytes) {
+        if (current.remaining() < bytes) {
+            if (current.position() > 0) {
+                handOff();
+            }
+            if (current.capacity() < bytes) {
+                current = ByteBuffer.allocateDirect(bytes); // fila más larga que el buffer
+            }
+        }
+    }
+
+    private void handOff() {
+        current.flip();
+        send(current);
+        while (true) {
+            try {
+                current = free.take();
+                return;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    /**
+     * Pasa un buffer al hilo de escritura aunque llegue una interrupción;
+     * la marca se restaura con restoreInterrupt.
+     */
+    private void send(ByteBuffer buffer) {
+        while (true) {
+            try {
+                full.put(buffer);
+                return;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    private void restoreInterrupt() {
+        if (interrupted) {
+            interrupted = false;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return el campo entre comillas si tiene comas, comillas o saltos
+     *         de línea, con las comillas internas duplicadas
+     */
+    static String csv(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + field.replace("\"", "\"\"") + '"';
+            }
+        }
+        return field;
+    }
+
+    private void put(char c) {
+        current.put((byte) c);
+    }
+
+    private void putAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            current.put((byte) s.charAt(i));
+        }
+    }
+
+    /** @return cifras decimales de un número no negativo */
+    private static int digitCount(int v) {
+        int n = 1;
+        while (v >= 10) {
+            v /= 10;
+            n++;
+        }
+        return n;
+    }
+
+    private void putLong(long v) {
+        if (v < 0) {
+            current.put((byte) '-');
+            v = -v;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v > 0);
+        while (n > 0) {
+            current.put(digits[--n]);
+        }
+    }
+
+    /**
+     * Ciclo del hilo de escritura.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                ByteBuffer buffer = full.take();
+                if (buffer == END) {
+                    return;
+                }
+                if (buffer == NEXT) {
+                    nextChannel();
+                    continue;
+                }
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+                buffer.clear();
+                free.offer(buffer);
+            }
+        } catch (InterruptedException e) {
+            failure = new IOException("Hilo de estadísticas interrumpido");
+        }
+    }
+
+    /**
+     * Cierra el archivo actual y abre el siguiente; corre en el hilo de
+     * escritura, después de escribir todo lo anterior.
+     */
+    private void nextChannel() {
+        try {
+            channel.close();
+            channel = open(part(file, ++part));
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package Maxwell;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento JFR que cubre un lote de pasos de {@link MaxwellContainer#start}.
+ */
+@Name("maxwell.StepBatch")
+@Label("Step Batch")
+@Category("Maxwell")
+@Description("Lote de pasos de la simulación")
+class StepBatchEvent extends Event {
+    @Label("Steps")
+    int steps;
+
+    @Label("Particle Steps")
+    long particleSteps;
+
+    @Label("Consumed Particles")
+    int consumed;
+
+    @Label("Particles Left")
+    int particles;
+}
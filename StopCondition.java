@@ -0,0 +1,56 @@
+package Maxwell;
+
+/**
+ * Condición para terminar antes {@link MaxwellContainer#runUntil}.
+ * Se evalúa después de cada paso, así que debe ser barata: las
+ * condiciones de esta interfaz leen contadores que el contenedor ya
+ * mantiene, sin recorrer las partículas.
+ */
+@FunctionalInterface
+public interface StopCondition {
+    /**
+     * @param container contenedor que se está simulando
+     * @return true si la simulación debe terminar
+     */
+    boolean reached(MaxwellContainer container);
+
+    /**
+     * @return condición que se cumple cuando se cumple esta o la otra
+     */
+    default StopCondition or(StopCondition other) {
+        return c -> reached(c) || other.reached(c);
+    }
+
+    /**
+     * @return se cumple cuando ya no quedan partículas
+     */
+    static StopCondition noParticles() {
+        return c -> c.getParticleCount() == 0;
+    }
+
+    /**
+     * @return se cumple cuando hay agujeros y todos están llenos
+     */
+    static StopCondition holesSaturated() {
+        return MaxwellContainer::allHolesFull;
+    }
+
+    /**
+     * @param threshold fracción mínima, entre 0 y 1
+     * @return se cumple cuando la separación de colores entre cámaras,
+     *         ver {@link MaxwellContainer#getSortedFraction()}, alcanza el
+     *         umbral
+     */
+    static StopCondition sorted(double threshold) {
+        return c -> c.getSortedFraction() >= threshold;
+    }
+
+    /**
+     * @param window número de pasos
+     * @return se cumple cuando pasaron 'window' pasos sin que ninguna
+     *         partícula cambiara de cámara ni fuera consumida
+     */
+    static StopCondition steadyState(int window) {
+        return c -> c.getStepsWithoutChange() >= window;
+    }
+}
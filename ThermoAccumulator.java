@@ -0,0 +1,95 @@
+package Maxwell;
+
+import java.util.Arrays;
+
+/**
+ * Acumula, durante un paso, cuántas partículas de cada color hay en cada
+ * cámara y su energía cinética. Se llena dentro del mismo ciclo que mueve
+ * las partículas, sin una pasada extra.
+ */
+class ThermoAccumulator {
+    static final int CHAMBERS = 2;
+
+    private int colors;
+    private int[] counts;     // [cámara * colors + color]
+    private long[] energy;    // [cámara]
+    private int[] population; // [cámara]
+
+    ThermoAccumulator(int colors) {
+        energy = new long[CHAMBERS];
+        population = new int[CHAMBERS];
+        reset(colors);
+    }
+
+    /**
+     * Vacía el acumulador para un nuevo paso.
+     * @param colors número de colores conocidos
+     */
+    void reset(int colors) {
+        if (counts == null || colors != this.colors) {
+            this.colors = colors;
+            counts = new int[CHAMBERS * Math.max(colors, 1)];
+        } else {
+            Arrays.fill(counts, 0);
+        }
+        Arrays.fill(energy, 0);
+        Arrays.fill(population, 0);
+    }
+
+    /**
+     * Cuenta una partícula.
+     * @param chamber 0 izquierda, 1 derecha
+     * @param color índice de color
+     * @param kinetic energía cinética de la partícula
+     */
+    void add(int chamber, int color, long kinetic) {
+        counts[chamber * colors + color]++;
+        energy[chamber] += kinetic;
+        population[chamber]++;
+    }
+
+    /**
+     * Entropía de mezcla de los colores: la entropía de Shannon (en bits)
+     * de los colores de cada cámara, ponderada por la población de la
+     * cámara. Vale 0 cuando cada cámara tiene un solo color.
+     * @return entropía en bits por partícula
+     */
+    double entropy() {
+        int total = population[0] + population[1];
+        if (total == 0) {
+            return 0;
+        }
+        double s = 0;
+        for (int c = 0; c < CHAMBERS; c++) {
+            int n = population[c];
+            for (int k = 0; k < colors; k++) {
+                int m = counts[c * colors + k];
+                if (m > 0) {
+                    double p = (double) m / n;
+                    s -= (double) n / total * p * Math.log(p);
+                }
+            }
+        }
+        return s / Math.log(2);
+    }
+
+    /**
+     * @param chamber 0 izquierda, 1 derecha
+     * @return energía cinética media de la cámara, en píxeles² por paso²
+     */
+    double meanEnergy(int chamber) {
+        int n = population[chamber];
+        if (n == 0) {
+            return 0;
+        }
+        return (double) energy[chamber] / n / ((long) Particle.UNIT * Particle.UNIT);
+    }
+
+    /**
+     * @param chamber 0 izquierda, 1 derecha
+     * @return partículas en la cámara
+     */
+    int population(int chamber) {
+        return population[chamber];
+    }
+}
@@ -0,0 +1,117 @@
+package Maxwell;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Serie de tiempo termodinámica de una simulación: por cada paso, la
+ * entropía de mezcla de colores entre cámaras y la población y energía
+ * cinética media de cada cámara (0 izquierda, 1 derecha).
+ * Se puede volcar a CSV y vaciar periódicamente para ir sacándola
+ * mientras la simulación avanza.
+ */
+public class ThermoSeries {
+    private long[] steps;
+    private double[] entropy;
+    private double[] energyLeft;
+    private double[] energyRight;
+    private int[] populationLeft;
+    private int[] populationRight;
+    private int size;
+
+    ThermoSeries() {
+        steps = new long[64];
+        entropy = new double[64];
+        energyLeft = new double[64];
+        energyRight = new double[64];
+        populationLeft = new int[64];
+        populationRight = new int[64];
+    }
+
+    /**
+     * Agrega el resultado de un paso.
+     */
+    void record(long step, ThermoAccumulator acc) {
+        if (size == steps.length) {
+            int n = size * 2;
+            steps = Arrays.copyOf(steps, n);
+            entropy = Arrays.copyOf(entropy, n);
+            energyLeft = Arrays.copyOf(energyLeft, n);
+            energyRight = Arrays.copyOf(energyRight, n);
+            populationLeft = Arrays.copyOf(populationLeft, n);
+            populationRight = Arrays.copyOf(populationRight, n);
+        }
+        steps[size] = step;
+        entropy[size] = acc.entropy();
+        energyLeft[size] = acc.meanEnergy(0);
+        energyRight[size] = acc.meanEnergy(1);
+        populationLeft[size] = acc.population(0);
+        populationRight[size] = acc.population(1);
+        size++;
+    }
+
+    /** @return número de pasos registrados */
+    public int size() {
+        return size;
+    }
+
+    /** @return número del paso i */
+    public long step(int i) {
+        check(i);
+        return steps[i];
+    }
+
+    /** @return entropía de mezcla (bits por partícula) en el paso i */
+    public double entropy(int i) {
+        check(i);
+        return entropy[i];
+    }
+
+    /**
+     * @param chamber 0 izquierda, 1 derecha
+     * @return energía cinética media de la cámara en el paso i
+     */
+    public double meanEnergy(int i, int chamber) {
+        check(i);
+        return chamber == 0 ? energyLeft[i] : energyRight[i];
+    }
+
+    /**
+     * @param chamber 0 izquierda, 1 derecha
+     * @return partículas en la cámara en el paso i
+     */
+    public int population(int i, int chamber) {
+        check(i);
+        return chamber == 0 ? populationLeft[i] : populationRight[i];
+    }
+
+    /**
+     * Escribe la serie como CSV, con encabezado.
+     * @param out destino
+     * @throws IOException si falla la escritura
+     */
+    public void writeCsv(Appendable out) throws IOException {
+        out.append("step,entropy,left,right,energyLeft,energyRight\n");
+        for (int i = 0; i < size; i++) {
+            out.append(Long.toString(steps[i])).append(',')
+               .append(Double.toString(entropy[i])).append(',')
+               .append(Integer.toString(populationLeft[i])).append(',')
+               .append(Integer.toString(populationRight[i])).append(',')
+               .append(Double.toString(energyLeft[i])).append(',')
+               .append(Double.toString(energyRight[i])).append('\n');
+        }
+    }
+
+    /**
+     * Vacía la serie, por ejemplo después de volcarla.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    private void check(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Paso " + i + " de " + size);
+        }
+    }
+}
@@ -13,6 +13,9 @@ public class Triangle {
     private int width;
     private String color;
     private boolean isVisible;
+    private int layer;
+    private Polygon shape; // on the canvas; only the event thread changes it
+    private ShapeMove move; // reused for every move of the shape
 
     /**
      * Create a new triangle at default position with default color.
@@ -24,14 +27,17 @@ public class Triangle {
         width = 40;
         color = "green";
         isVisible = false;
+        layer = Canvas.DYNAMIC_LAYER;
     }
 
     /**
      * Make this triangle visible.
      */
     public void makeVisible() {
-        isVisible = true;
-        draw();
+        if (!isVisible) {
+            isVisible = true;
+            draw();
+        }
     }
 
     /**
@@ -75,9 +81,7 @@ public class Triangle {
      * @param distance positive (right) or negative (left)
      */
     public void moveHorizontal(int distance) {
-        erase();
-        xPosition += distance;
-        draw();
+        moveBy(distance, 0);
     }
 
     /**
@@ -85,9 +89,22 @@ public class Triangle {
      * @param distance positive (down) or negative (up)
      */
     public void moveVertical(int distance) {
-        erase();
-        yPosition += distance;
-        draw();
+        moveBy(0, distance);
+    }
+
+    /**
+     * Move the triangle by 'dx' pixels horizontally and 'dy' pixels vertically
+     * in a single update, without allocating a new shape.
+     * @param dx positive (right) or negative (left)
+     * @param dy positive (down) or negative (up)
+     */
+    public void moveBy(int dx, int dy) {
+        xPosition += dx;
+        yPosition += dy;
+        if(isVisible) {
+            // the canvas translates the polygon on the event thread
+            Canvas.getCanvas().move(move, xPosition - width/2, yPosition, width, height);
+        }
     }
 
     /**
@@ -130,17 +147,36 @@ public class Triangle {
      * @param newColor the color name
      */
     public void changeColor(String newColor) {
+        erase();
         color = newColor;
         draw();
     }
 
+    /**
+     * Move the triangle to another canvas layer. Shapes that rarely change
+     * belong in Canvas.STATIC_LAYER; moving ones in Canvas.DYNAMIC_LAYER.
+     * @param newLayer the new layer
+     */
+    public void changeLayer(int newLayer) {
+        erase();
+        layer = newLayer;
+        draw();
+    }
+
     /**
      * Draw the triangle with current specifications on screen.
      */
     private void draw() {
         if(isVisible) {
             Canvas canvas = Canvas.getCanvas();
-            canvas.add(createShape(), convertColor(color));
+            // a new geometry, since the canvas may still paint the old one
+            shape = new Polygon();
+            // We'll define the triangle as an isosceles pointing downward
+            shape.addPoint(xPosition, yPosition);
+            shape.addPoint(xPosition + width/2, yPosition + height);
+            shape.addPoint(xPosition - width/2, yPosition + height);
+            move = new ShapeMove(shape, layer);
+            canvas.add(shape, convertColor(color), layer);
         }
     }
 
@@ -150,22 +186,10 @@ public class Triangle {
     private void erase() {
         if(isVisible) {
             Canvas canvas = Canvas.getCanvas();
-            canvas.remove(createShape());
+            canvas.remove(shape, layer);
         }
     }
 
-    /**
-     * Create the Polygon shape for this triangle.
-     */
-    private Shape createShape() {
-        Polygon triangle = new Polygon();
-        // We'll define the triangle as an isosceles pointing downward
-        triangle.addPoint(xPosition, yPosition);
-        triangle.addPoint(xPosition + width/2, yPosition + height);
-        triangle.addPoint(xPosition - width/2, yPosition + height);
-        return triangle;
-    }
-
     /**
      * Convert a color string into a Java Color object.
      */